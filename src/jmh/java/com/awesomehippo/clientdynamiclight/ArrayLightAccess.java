@@ -0,0 +1,74 @@
+package com.awesomehippo.clientdynamiclight;
+
+import java.util.Random;
+
+/*
+ * In-memory block light for LightPropagator, a size x 256 x size box starting at 0,0,0.
+ * Outside the box is dark and opaque, and not loaded.
+ */
+final class ArrayLightAccess implements BlockLightAccess {
+
+    private final int size;
+    private final byte[] light;
+    private final byte[] opacity;
+    private final byte[] emitted;
+
+    ArrayLightAccess(int size) {
+        this.size = size;
+        this.light = new byte[size * size * 256];
+        this.opacity = new byte[light.length];
+        this.emitted = new byte[light.length];
+    }
+
+    /* scatters fully opaque blocks, `density` out of 1 */
+    void scatterWalls(double density, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < opacity.length; i++) {
+            opacity[i] = (byte) (random.nextDouble() < density ? 255 : 0);
+        }
+    }
+
+    void setOpacity(int x, int y, int z, int opacity) {
+        this.opacity[index(x, y, z)] = (byte) opacity;
+    }
+
+    void setEmitted(int x, int y, int z, int level) {
+        emitted[index(x, y, z)] = (byte) level;
+    }
+
+    private boolean inside(int x, int y, int z) {
+        return x >= 0 && z >= 0 && x < size && z < size && y >= 0 && y < 256;
+    }
+
+    private int index(int x, int y, int z) {
+        return (y * size + z) * size + x;
+    }
+
+    @Override
+    public int getSavedLight(int x, int y, int z) {
+        y = Math.max(0, Math.min(255, y));
+        return inside(x, y, z) ? light[index(x, y, z)] : 0;
+    }
+
+    @Override
+    public void setLight(int x, int y, int z, int level) {
+        if (inside(x, y, z)) {
+            light[index(x, y, z)] = (byte) level;
+        }
+    }
+
+    @Override
+    public int getOpacity(int x, int y, int z) {
+        return inside(x, y, z) ? opacity[index(x, y, z)] & 255 : 255;
+    }
+
+    @Override
+    public int getEmittedLight(int x, int y, int z) {
+        return inside(x, y, z) ? emitted[index(x, y, z)] : 0;
+    }
+
+    @Override
+    public boolean isAreaLoaded(int x, int y, int z, int radius) {
+        return x - radius >= 0 && z - radius >= 0 && x + radius < size && z + radius < size;
+    }
+}
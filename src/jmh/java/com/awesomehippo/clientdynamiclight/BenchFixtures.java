@@ -0,0 +1,171 @@
+package com.awesomehippo.clientdynamiclight;
+
+import com.awesomehippo.clientdynamiclight.config.EntityConfigLoader;
+import com.awesomehippo.clientdynamiclight.config.ItemsConfigLoader;
+import com.mojang.authlib.GameProfile;
+import net.minecraft.client.entity.EntityOtherPlayerMP;
+import net.minecraft.client.multiplayer.ChunkProviderClient;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.item.EntityItem;
+import net.minecraft.entity.monster.EntityCreeper;
+import net.minecraft.entity.monster.EntityMagmaCube;
+import net.minecraft.entity.passive.EntityPig;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.init.Blocks;
+import net.minecraft.init.Bootstrap;
+import net.minecraft.init.Items;
+import net.minecraft.item.ItemStack;
+import net.minecraft.profiler.Profiler;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldProvider;
+import net.minecraft.world.WorldSettings;
+import net.minecraft.world.WorldType;
+import net.minecraft.world.biome.BiomeGenBase;
+import net.minecraft.world.biome.WorldChunkManagerHell;
+import net.minecraft.world.chunk.IChunkProvider;
+import net.minecraft.world.storage.SaveHandlerMP;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/*
+ * Headless stand-ins for the benchmarks: a client-like World that never loads a chunk, entities built in it,
+ * and the default configs written to a temp dir. Nothing here needs a running client (or the transformer,
+ * StubWorld implements LightDataHolder itself).
+ */
+final class BenchFixtures {
+
+    static final int CENTER_Y = 64;
+
+    private static boolean bootstrapped;
+
+    private BenchFixtures() {
+    }
+
+    /* registries (the configs resolve ids through them) and the default configs, once per fork */
+    static synchronized void bootstrap() {
+        if (bootstrapped) return;
+        Bootstrap.func_151354_b();
+        try {
+            File dir = Files.createTempDirectory("clientdynamiclight-bench").toFile();
+            ItemsConfigLoader.INSTANCE.loadConfig(new File(dir, "config_items.json"));
+            EntityConfigLoader.INSTANCE.loadConfig(new File(dir, "config_entities.json"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        bootstrapped = true;
+    }
+
+    static StubWorld newWorld() {
+        bootstrap();
+        return new StubWorld();
+    }
+
+    static EntityPlayer newPlayer(World world, double x, double y, double z) {
+        EntityPlayer player = new EntityOtherPlayerMP(world, new GameProfile(UUID.randomUUID(), "bench"));
+        player.setPosition(x, y, z);
+        return player;
+    }
+
+    /*
+     * What a scan typically gets from the candidate set: dropped items (torches and plain blocks), pigs,
+     * creepers and magma cubes, spread over +-spread blocks around 0,CENTER_Y,0
+     */
+    static List<Entity> entities(World world, int count, int spread, long seed) {
+        Random random = new Random(seed);
+        List<Entity> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Entity e;
+            switch (i & 7) {
+                case 0:
+                case 1:
+                    e = new EntityItem(world, 0, 0, 0, new ItemStack(Blocks.torch));
+                    break;
+                case 2:
+                    e = new EntityItem(world, 0, 0, 0, new ItemStack(Blocks.dirt));
+                    break;
+                case 3:
+                    e = new EntityItem(world, 0, 0, 0, new ItemStack(Items.stick));
+                    break;
+                case 4:
+                    e = new EntityCreeper(world);
+                    break;
+                case 5:
+                    e = new EntityMagmaCube(world);
+                    break;
+                default:
+                    e = new EntityPig(world);
+                    break;
+            }
+            e.setPosition(
+                    (random.nextDouble() * 2 - 1) * spread,
+                    CENTER_Y + (random.nextDouble() * 2 - 1) * 16,
+                    (random.nextDouble() * 2 - 1) * spread);
+            out.add(e);
+        }
+        return out;
+    }
+
+    /* a World with no chunks, like WorldClient before the server sends any */
+    static final class StubWorld extends World implements LightDataHolder {
+        private volatile WorldLightData dynamicLightData;
+
+        StubWorld() {
+            super(new SaveHandlerMP(), "bench", new StubProvider(),
+                    new WorldSettings(0L, WorldSettings.GameType.SURVIVAL, false, false, WorldType.FLAT), new Profiler());
+            isRemote = true;
+        }
+
+        @Override
+        protected IChunkProvider createChunkProvider() {
+            return new ChunkProviderClient(this);
+        }
+
+        @Override
+        public Entity getEntityByID(int id) {
+            return null;
+        }
+
+        @Override
+        protected int func_152379_p() {
+            return 4; // render distance, never used here
+        }
+
+        @Override
+        public WorldLightData getDynamicLightData() {
+            return dynamicLightData;
+        }
+
+        @Override
+        public void setDynamicLightData(WorldLightData data) {
+            this.dynamicLightData = data;
+        }
+
+        /* the data the handler would have created on the first light */
+        WorldLightData lightData() {
+            if (dynamicLightData == null) {
+                dynamicLightData = new WorldLightData(this);
+            }
+            return dynamicLightData;
+        }
+    }
+
+    // overworld without the biome generator setup
+    private static final class StubProvider extends WorldProvider {
+        @Override
+        protected void registerWorldChunkManager() {
+            worldChunkMgr = new WorldChunkManagerHell(BiomeGenBase.plains, 0.5F);
+        }
+
+        @Override
+        public String getDimensionName() {
+            return "bench";
+        }
+    }
+}
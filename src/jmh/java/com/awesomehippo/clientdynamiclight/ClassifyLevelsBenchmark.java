@@ -0,0 +1,98 @@
+package com.awesomehippo.clientdynamiclight;
+
+import com.awesomehippo.clientdynamiclight.config.EntityConfigLoader;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.world.World;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * What ParallelClassifier's constants and the LightLevelMemo are picked from, on a snapshot with every entry in
+ * range (the default configs, BenchFixtures' entity mix):
+ *
+ * - inline / forkJoin: the config loaders for every entry, by entry count and leaf size. THRESHOLD is where
+ *   forkJoin starts to beat inline, LEAF_SIZE the leaf size it does best with.
+ * - memo: the path scans take, memo lookups then the misses (fork-joined past THRESHOLD), with `changed` percent
+ *   of the entries getting other inputs every call (held item swapped, mob catching fire). Against inline at
+ *   the same size: the memo only pays if it wins at the low percentages, the usual scan.
+ *
+ * Each benchmark only runs over the params of the states it takes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ClassifyLevelsBenchmark {
+
+    @State(Scope.Thread)
+    public static class Entries {
+        @Param({"256", "1024", "2048", "4096", "16384"})
+        public int entries;
+
+        EntitySnapshot snapshot;
+
+        @Setup
+        public void setup() {
+            World world = BenchFixtures.newWorld();
+            EntityPlayer player = BenchFixtures.newPlayer(world, 0.5, BenchFixtures.CENTER_Y, 0.5);
+            snapshot = new EntitySnapshot();
+            snapshot.begin(player);
+            for (Entity e : BenchFixtures.entities(world, entries, 32, 42)) {
+                snapshot.add(e);
+            }
+            for (int i = 0; i < snapshot.size; i++) {
+                snapshot.inRange[i] = i;
+            }
+            snapshot.inRangeCount = snapshot.size;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Leaves {
+        @Param({"64", "256", "1024"})
+        public int leafSize;
+    }
+
+    @State(Scope.Thread)
+    public static class Churn {
+        @Param({"0", "10", "100"})
+        public int changed;
+
+        final LightLevelMemo memo = new LightLevelMemo();
+    }
+
+    @Benchmark
+    public int[] inline(Entries e) {
+        ParallelClassifier.classify(e.snapshot, false, ParallelClassifier.LEAF_SIZE);
+        return e.snapshot.levels;
+    }
+
+    @Benchmark
+    public int[] forkJoin(Entries e, Leaves l) {
+        ParallelClassifier.classify(e.snapshot, true, l.leafSize);
+        return e.snapshot.levels;
+    }
+
+    @Benchmark
+    public int[] memo(Entries e, Churn c) {
+        EntitySnapshot s = e.snapshot;
+        // the same entries change every call, the others stay memo hits after the first one
+        for (int i = 0; i < s.size; i++) {
+            if (i % 100 >= c.changed) continue;
+            if (s.kinds[i] == EntitySnapshot.KIND_ENTITY) {
+                s.states[i] ^= EntityConfigLoader.STATE_BURNING;
+            } else {
+                s.itemDamages[i] ^= 1;
+            }
+        }
+        ParallelClassifier.classify(s, c.memo);
+        return s.levels;
+    }
+}
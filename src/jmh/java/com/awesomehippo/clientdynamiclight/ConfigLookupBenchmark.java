@@ -0,0 +1,69 @@
+package com.awesomehippo.clientdynamiclight;
+
+import com.awesomehippo.clientdynamiclight.config.EntityConfigLoader;
+import com.awesomehippo.clientdynamiclight.config.ItemsConfigLoader;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.monster.EntityCreeper;
+import net.minecraft.entity.monster.EntityMagmaCube;
+import net.minecraft.entity.passive.EntityPig;
+import net.minecraft.init.Blocks;
+import net.minecraft.item.ItemStack;
+import net.minecraft.world.World;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/* both config loaders' getLightLevel with the default configs, a matching and a non matching input each */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConfigLookupBenchmark {
+
+    private World world;
+    private ItemStack torch;
+    private ItemStack dirt;
+    private Entity magmaCube;
+    private Entity creeper;
+    private Entity pig;
+
+    @Setup
+    public void setup() {
+        world = BenchFixtures.newWorld();
+        torch = new ItemStack(Blocks.torch);
+        dirt = new ItemStack(Blocks.dirt);
+        magmaCube = new EntityMagmaCube(world);
+        creeper = new EntityCreeper(world); // has a rule, but only charged ones match
+        pig = new EntityPig(world);
+    }
+
+    @Benchmark
+    public int itemHit() {
+        return ItemsConfigLoader.INSTANCE.getLightLevel(torch, world, false, true);
+    }
+
+    @Benchmark
+    public int itemMiss() {
+        return ItemsConfigLoader.INSTANCE.getLightLevel(dirt, world, true, false);
+    }
+
+    @Benchmark
+    public int entityHit() {
+        return EntityConfigLoader.INSTANCE.getLightLevel(magmaCube);
+    }
+
+    @Benchmark
+    public int entityRuleMiss() {
+        return EntityConfigLoader.INSTANCE.getLightLevel(creeper);
+    }
+
+    @Benchmark
+    public int entityNoRule() {
+        return EntityConfigLoader.INSTANCE.getLightLevel(pig);
+    }
+}
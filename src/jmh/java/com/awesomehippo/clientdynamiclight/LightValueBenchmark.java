@@ -0,0 +1,57 @@
+package com.awesomehippo.clientdynamiclight;
+
+import com.awesomehippo.clientdynamiclight.util.PackedPos;
+import net.minecraft.block.Block;
+import net.minecraft.init.Blocks;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The computeLightValue hook, called for every block a relight touches (ours and vanilla's).
+ *  - hit: position with a dynamic level
+ *  - sectionMiss: world has dynamic light but not in that section (the common case)
+ *  - noData: world never got any dynamic light (server worlds, or before the first light)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LightValueBenchmark {
+
+    private BenchFixtures.StubWorld world;
+    private BenchFixtures.StubWorld emptyWorld;
+    private Block air;
+
+    @Setup
+    public void setup() {
+        world = BenchFixtures.newWorld();
+        emptyWorld = BenchFixtures.newWorld();
+        air = Blocks.air;
+
+        // one source, its maxLevels entry and section bit, the way a scan puts them there
+        WorldLightData data = world.lightData();
+        data.index.add(new DynamicLightSource(1, 8, BenchFixtures.CENTER_Y, 8, 14));
+        ClientDynamicLightHandler.INSTANCE.updateMaxAndQueue(data, PackedPos.pack(8, BenchFixtures.CENTER_Y, 8));
+    }
+
+    @Benchmark
+    public int hit() {
+        return ClientDynamicLightHandler.getLightValue(world, air, 8, BenchFixtures.CENTER_Y, 8);
+    }
+
+    @Benchmark
+    public int sectionMiss() {
+        return ClientDynamicLightHandler.getLightValue(world, air, 200, BenchFixtures.CENTER_Y, 200);
+    }
+
+    @Benchmark
+    public int noData() {
+        return ClientDynamicLightHandler.getLightValue(emptyWorld, air, 8, BenchFixtures.CENTER_Y, 8);
+    }
+}
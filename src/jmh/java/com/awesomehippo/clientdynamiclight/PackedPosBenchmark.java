@@ -0,0 +1,41 @@
+package com.awesomehippo.clientdynamiclight;
+
+import com.awesomehippo.clientdynamiclight.util.PackedPos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/* position packing, what the old packPosition/unpackPosition did */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PackedPosBenchmark {
+
+    // not final, so the JIT can't fold the inputs
+    private int x = -12345, y = 64, z = 67890;
+    private long packed = PackedPos.pack(-12345, 64, 67890);
+
+    @Benchmark
+    public long pack() {
+        return PackedPos.pack(x, y, z);
+    }
+
+    @Benchmark
+    public void unpack(Blackhole bh) {
+        bh.consume(PackedPos.x(packed));
+        bh.consume(PackedPos.y(packed));
+        bh.consume(PackedPos.z(packed));
+    }
+
+    @Benchmark
+    public long roundTrip() {
+        long p = PackedPos.pack(x, y, z);
+        return PackedPos.pack(PackedPos.x(p) + 1, PackedPos.y(p), PackedPos.z(p));
+    }
+}
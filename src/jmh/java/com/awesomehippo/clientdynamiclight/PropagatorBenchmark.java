@@ -0,0 +1,103 @@
+package com.awesomehippo.clientdynamiclight;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * A level 15 emitter moving one block per call around a small loop (a player walking with a torch), both the
+ * old and the new position go through one LightPropagator batch. Runs on ArrayLightAccess, no World involved.
+ *
+ * vanillaMoveEmitter is the baseline: the same two positions through VanillaBlockLight, one vanilla
+ * updateLightByType each (what RelightBatcher did before the propagator). Both end with the same light,
+ * LightPropagatorTest checks that.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PropagatorBenchmark {
+
+    private static final int SIZE = 128;
+    private static final int Y = 64;
+
+    // square loop inside the first 64x64 region, far enough from the edges to count as loaded
+    private static final int[] PATH_X;
+    private static final int[] PATH_Z;
+    static {
+        int side = 8;
+        PATH_X = new int[side * 4];
+        PATH_Z = new int[side * 4];
+        int[] dx = {1, 0, -1, 0};
+        int[] dz = {0, 1, 0, -1};
+        int x = 28, z = 28;
+        for (int i = 0; i < PATH_X.length; i++) {
+            PATH_X[i] = x;
+            PATH_Z[i] = z;
+            x += dx[i / side];
+            z += dz[i / side];
+        }
+    }
+
+    @Param({"0.0", "0.2"})
+    public double walls; // share of opaque blocks around
+
+    private ArrayLightAccess access;
+    private final LightPropagator propagator = new LightPropagator();
+    private final VanillaBlockLight vanilla = new VanillaBlockLight();
+    private int step;
+
+    @Setup
+    public void setup() {
+        access = new ArrayLightAccess(SIZE);
+        if (walls > 0) {
+            access.scatterWalls(walls, 42);
+        }
+        // the path itself stays open
+        for (int i = 0; i < PATH_X.length; i++) {
+            access.setOpacity(PATH_X[i], Y, PATH_Z[i], 0);
+        }
+        step = 0;
+        access.setEmitted(PATH_X[0], Y, PATH_Z[0], 15);
+        propagator.begin(access, PATH_X[0], PATH_Z[0]);
+        propagator.addSeed(PATH_X[0], Y, PATH_Z[0]);
+        propagator.propagate();
+    }
+
+    @Benchmark
+    public int moveEmitter() {
+        int from = step;
+        int to = step();
+
+        propagator.begin(access, PATH_X[to], PATH_Z[to]);
+        propagator.addSeed(PATH_X[from], Y, PATH_Z[from]);
+        propagator.addSeed(PATH_X[to], Y, PATH_Z[to]);
+        return propagator.propagate();
+    }
+
+    @Benchmark
+    public boolean vanillaMoveEmitter() {
+        int from = step;
+        int to = step();
+
+        vanilla.update(access, PATH_X[from], Y, PATH_Z[from]);
+        return vanilla.update(access, PATH_X[to], Y, PATH_Z[to]);
+    }
+
+    // moves the emitter one block along the loop, returns the new step
+    private int step() {
+        int from = step;
+        int to = from + 1 == PATH_X.length ? 0 : from + 1;
+        step = to;
+
+        access.setEmitted(PATH_X[from], Y, PATH_Z[from], 0);
+        access.setEmitted(PATH_X[to], Y, PATH_Z[to], 15);
+        return to;
+    }
+}
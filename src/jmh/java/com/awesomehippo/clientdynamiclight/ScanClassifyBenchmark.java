@@ -0,0 +1,72 @@
+package com.awesomehippo.clientdynamiclight;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.MathHelper;
+import net.minecraft.world.World;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * A scan, step by step: the snapshot the client thread takes of the candidates in the sectors due that tick
+ * (time sliced schedule), then on the worker the range check over it. The light levels of what's in range are
+ * in ClassifyLevelsBenchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ScanClassifyBenchmark {
+
+    private static final int RANGE = 64;
+
+    @Param({"10", "1000", "10000"})
+    public int entities;
+
+    private World world;
+    private EntityPlayer player;
+    private List<Entity> candidates;
+    private final ClientDynamicLightHandler.ScannerRunnable scan = new ClientDynamicLightHandler.ScannerRunnable();
+    private EntitySnapshot snapshot;
+    private long tick;
+
+    @Setup
+    public void setup() {
+        world = BenchFixtures.newWorld();
+        player = BenchFixtures.newPlayer(world, 0.5, BenchFixtures.CENTER_Y, 0.5);
+        candidates = BenchFixtures.entities(world, entities, RANGE + 32, 42); // some out of range
+        snapshot = scan.snapshot;
+    }
+
+    // what EmitterCandidates.collect does
+    private void capture(EntitySnapshot s, ScanSlicer.DueSectors due) {
+        s.begin(player);
+        for (Entity e : candidates) {
+            if (due.contains(MathHelper.floor_double(e.posX), MathHelper.floor_double(e.posZ))) {
+                s.add(e);
+            }
+        }
+    }
+
+    @Benchmark
+    public int snapshot() {
+        // the sector schedule depends on the tick, so go through all of them
+        scan.set(world, RANGE, tick++, 0, 0, 1, null);
+        capture(snapshot, scan.dueSectors);
+        return snapshot.size;
+    }
+
+    @Benchmark
+    public int classify() {
+        snapshot();
+        return scan.classify();
+    }
+}
@@ -0,0 +1,66 @@
+package com.awesomehippo.clientdynamiclight;
+
+import com.awesomehippo.clientdynamiclight.util.LongObjectHashMap;
+import com.awesomehippo.clientdynamiclight.util.PackedPos;
+
+/*
+ * In-memory stand-in for a client world's block light, for trace replays: any coordinates, open air everywhere
+ * (nothing blocks light), always loaded. Emitted light is the dynamic light of `data`, like the hook would
+ * return it. Light is stored per 16x16x16 section, created on the first write.
+ */
+final class SparseLightAccess implements BlockLightAccess {
+
+    private final WorldLightData data;
+    private final LongObjectHashMap<byte[]> sections = new LongObjectHashMap<>();
+
+    SparseLightAccess(WorldLightData data) {
+        this.data = data;
+    }
+
+    int sectionCount() {
+        return sections.size();
+    }
+
+    private static long sectionKey(int x, int y, int z) {
+        return PackedPos.pack(x >> 4, y >> 4, z >> 4);
+    }
+
+    private static int indexIn(int x, int y, int z) {
+        return ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+    }
+
+    @Override
+    public int getSavedLight(int x, int y, int z) {
+        y = Math.max(0, Math.min(255, y));
+        byte[] section = sections.get(sectionKey(x, y, z));
+        return section != null ? section[indexIn(x, y, z)] : 0;
+    }
+
+    @Override
+    public void setLight(int x, int y, int z, int level) {
+        if (y < 0 || y > 255) return;
+        long key = sectionKey(x, y, z);
+        byte[] section = sections.get(key);
+        if (section == null) {
+            if (level == 0) return;
+            section = new byte[4096];
+            sections.put(key, section);
+        }
+        section[indexIn(x, y, z)] = (byte) level;
+    }
+
+    @Override
+    public int getOpacity(int x, int y, int z) {
+        return 0;
+    }
+
+    @Override
+    public int getEmittedLight(int x, int y, int z) {
+        return data.maxLevels.get(PackedPos.pack(x, y, z));
+    }
+
+    @Override
+    public boolean isAreaLoaded(int x, int y, int z, int radius) {
+        return true;
+    }
+}
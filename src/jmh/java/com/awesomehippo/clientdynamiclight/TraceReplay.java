@@ -0,0 +1,225 @@
+package com.awesomehippo.clientdynamiclight;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/*
+ * Replays a trace recorded in game (see TraceRecorder) through the handler's light logic, against
+ * SparseLightAccess instead of a world. No Minecraft instance, no chunks: light propagates through open air,
+ * so relight costs are an upper bound of what the same workload costs in game.
+ *
+ * Prints a summary and the worst ticks, and optionally writes every tick to a csv:
+ *   gradlew replayTrace -Ptrace=path/to/trace.txt.gz [-PtraceCsv=out.csv]
+ *
+ * Always replays with world light (overlay mode needs a real world to re-render).
+ */
+public final class TraceReplay {
+
+    private static final int WORST_TICKS = 10;
+
+    private final ClientDynamicLightHandler handler = ClientDynamicLightHandler.INSTANCE;
+    private final WorldLightData data = new WorldLightData(null);
+    private final SparseLightAccess access = new SparseLightAccess(data);
+
+    // pending scan, applied once all its E/F lines are read
+    private final ClientDynamicLightHandler.SeenEntities seen = new ClientDynamicLightHandler.SeenEntities();
+    private double lastX, lastY, lastZ; // player at the last tick end
+    private boolean scanPending;
+    private long scanTime;
+    private int scanPlayer;
+    private int[] fading = new int[16];
+    private int fadingCount;
+
+    private int[] gone = new int[16];
+    private int goneCount;
+    private ViewCone view;
+
+    // stats of the tick being replayed
+    private long tickNanos;
+    private int pendingAfterDrain;
+    private final List<TickStats> ticks = new ArrayList<>();
+
+    static final class TickStats {
+        final long worldTime;
+        final int sources;
+        final int queued;
+        final int relights;
+        final long nanos;
+
+        TickStats(long worldTime, int sources, int queued, int relights, long nanos) {
+            this.worldTime = worldTime;
+            this.sources = sources;
+            this.queued = queued;
+            this.relights = relights;
+            this.nanos = nanos;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: TraceReplay <trace.txt[.gz]> [ticks.csv]");
+            System.exit(1);
+        }
+        TraceReplay replay = new TraceReplay();
+        replay.run(new File(args[0]));
+        replay.printSummary(System.out);
+        if (args.length > 1) {
+            try (PrintStream csv = new PrintStream(new FileOutputStream(args[1]), false, "UTF-8")) {
+                replay.writeCsv(csv);
+            }
+        }
+    }
+
+    void run(File trace) throws IOException {
+        InputStream in = new FileInputStream(trace);
+        if (trace.getName().endsWith(".gz")) {
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty() || line.charAt(0) == '#') continue;
+                try {
+                    replayLine(line);
+                } catch (RuntimeException e) {
+                    throw new IOException("bad trace line " + lineNumber + ": " + line, e);
+                }
+            }
+        }
+        flushScan();
+    }
+
+    private void replayLine(String line) {
+        String[] p = line.split(" ");
+        switch (p[0]) {
+            case "S":
+                flushScan();
+                scanPending = true;
+                scanTime = Long.parseLong(p[1]);
+                scanPlayer = Integer.parseInt(p[2]);
+                seen.clear();
+                if (p.length >= 7) {
+                    seen.setOrigin(Double.parseDouble(p[4]), Double.parseDouble(p[5]), Double.parseDouble(p[6]));
+                } else { // older traces don't have it, the last tick's position is close enough
+                    seen.setOrigin(lastX, lastY, lastZ);
+                }
+                fadingCount = 0;
+                break;
+            case "E":
+                seen.add(Integer.parseInt(p[1]), Integer.parseInt(p[5]),
+                        Double.parseDouble(p[2]), Double.parseDouble(p[3]), Double.parseDouble(p[4]),
+                        -1, 0, "1".equals(p[8])); // levels are replayed as recorded, the item doesn't matter
+                break;
+            case "F":
+                fading = push(fading, fadingCount++, Integer.parseInt(p[1]));
+                break;
+            case "G":
+                flushScan();
+                gone = push(gone, goneCount++, Integer.parseInt(p[1]));
+                break;
+            case "V":
+                flushScan();
+                view = new ViewCone(Double.parseDouble(p[1]), Double.parseDouble(p[2]), Double.parseDouble(p[3]),
+                        Float.parseFloat(p[4]), Float.parseFloat(p[5]), Double.parseDouble(p[6]), Double.parseDouble(p[7]));
+                break;
+            case "T":
+                flushScan();
+                endTick(Long.parseLong(p[1]), Double.parseDouble(p[2]), Double.parseDouble(p[3]), Double.parseDouble(p[4]));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown record " + p[0]);
+        }
+    }
+
+    private void flushScan() {
+        if (!scanPending) return;
+        scanPending = false;
+
+        // the recorded decisions are sorted once, outside of the timed part
+        int[] fades = Arrays.copyOf(fading, fadingCount);
+        Arrays.sort(fades);
+
+        long start = System.nanoTime();
+        handler.applyScan(data, seen, id -> Arrays.binarySearch(fades, id) >= 0, scanTime, scanPlayer);
+        tickNanos += System.nanoTime() - start;
+    }
+
+    private void endTick(long worldTime, double px, double py, double pz) {
+        lastX = px;
+        lastY = py;
+        lastZ = pz;
+        int[] gones = Arrays.copyOf(gone, goneCount);
+        Arrays.sort(gones);
+        goneCount = 0;
+
+        long start = System.nanoTime();
+        handler.updateLightPositions(data, worldTime, id -> Arrays.binarySearch(gones, id) >= 0);
+        int queued = handler.pendingRenderUpdates() - pendingAfterDrain;
+        int relights = handler.applyRenderUpdates(access, px, py, pz, view);
+        tickNanos += System.nanoTime() - start;
+
+        pendingAfterDrain = handler.pendingRenderUpdates();
+        ticks.add(new TickStats(worldTime, data.lightMap.size(), Math.max(0, queued), relights, tickNanos));
+        tickNanos = 0;
+        view = null;
+    }
+
+    private static int[] push(int[] a, int i, int value) {
+        if (i == a.length) a = Arrays.copyOf(a, i * 2);
+        a[i] = value;
+        return a;
+    }
+
+    void printSummary(PrintStream out) {
+        if (ticks.isEmpty()) {
+            out.println("no ticks in trace");
+            return;
+        }
+        long[] nanos = new long[ticks.size()];
+        long queued = 0, relights = 0;
+        int maxSources = 0;
+        for (int i = 0; i < ticks.size(); i++) {
+            TickStats t = ticks.get(i);
+            nanos[i] = t.nanos;
+            queued += t.queued;
+            relights += t.relights;
+            maxSources = Math.max(maxSources, t.sources);
+        }
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long n : sorted) total += n;
+
+        out.printf("ticks %d, sources max %d, queued %d, relights %d, sections lit %d%n",
+                ticks.size(), maxSources, queued, relights, access.sectionCount());
+        out.printf("tick time us: mean %.1f, p50 %.1f, p99 %.1f, max %.1f%n",
+                total / 1e3 / sorted.length, percentile(sorted, 0.50) / 1e3, percentile(sorted, 0.99) / 1e3,
+                sorted[sorted.length - 1] / 1e3);
+
+        out.println("worst ticks (worldTime: us, queued, relights, sources):");
+        Integer[] order = new Integer[ticks.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(nanos[b], nanos[a]));
+        for (int i = 0; i < Math.min(WORST_TICKS, order.length); i++) {
+            TickStats t = ticks.get(order[i]);
+            out.printf("  %d: %.1f, %d, %d, %d%n", t.worldTime, t.nanos / 1e3, t.queued, t.relights, t.sources);
+        }
+    }
+
+    void writeCsv(PrintStream out) {
+        out.println("worldTime,sources,queued,relights,micros");
+        for (TickStats t : ticks) {
+            out.printf("%d,%d,%d,%d,%.1f%n", t.worldTime, t.sources, t.queued, t.relights, t.nanos / 1e3);
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+    }
+}
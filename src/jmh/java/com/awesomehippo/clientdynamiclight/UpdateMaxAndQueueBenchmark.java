@@ -0,0 +1,59 @@
+package com.awesomehippo.clientdynamiclight;
+
+import com.awesomehippo.clientdynamiclight.util.PackedPos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * One source changing level among `sources` others (index lookup, maxLevels/section mask upkeep, render queue).
+ * The positions never change so the render queue coalesces and never grows, nothing drains it here.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UpdateMaxAndQueueBenchmark {
+
+    @Param({"10", "1000"})
+    public int sources;
+
+    private WorldLightData data;
+    private DynamicLightSource[] all;
+    private long[] positions;
+    private int next;
+
+    @Setup
+    public void setup() {
+        data = BenchFixtures.newWorld().lightData();
+        Random random = new Random(42);
+        all = new DynamicLightSource[sources];
+        positions = new long[sources];
+        for (int i = 0; i < sources; i++) {
+            int x = random.nextInt(128) - 64;
+            int y = BenchFixtures.CENTER_Y + random.nextInt(16);
+            int z = random.nextInt(128) - 64;
+            all[i] = new DynamicLightSource(i, x, y, z, 1 + random.nextInt(15));
+            positions[i] = PackedPos.pack(x, y, z);
+            data.index.add(all[i]);
+            ClientDynamicLightHandler.INSTANCE.updateMaxAndQueue(data, positions[i]);
+        }
+    }
+
+    @Benchmark
+    public void toggleLevel() {
+        int i = next;
+        next = i + 1 == sources ? 0 : i + 1;
+
+        DynamicLightSource source = all[i];
+        source.level = source.level == 0 ? 14 : 0; // on and off, so maxLevels really changes
+        ClientDynamicLightHandler.INSTANCE.updateMaxAndQueue(data, positions[i]);
+    }
+}
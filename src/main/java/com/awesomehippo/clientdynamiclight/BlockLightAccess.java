@@ -0,0 +1,20 @@
+package com.awesomehippo.clientdynamiclight;
+
+/*
+ * What LightPropagator needs from a world, block light only.
+ * Kept this small so the propagator can also run against something that isn't a World.
+ */
+interface BlockLightAccess {
+
+    // like World.getSavedLightValue(EnumSkyBlock.Block, ...), y is clamped to the world height
+    int getSavedLight(int x, int y, int z);
+
+    void setLight(int x, int y, int z, int level);
+
+    int getOpacity(int x, int y, int z);
+
+    // the block's own light, dynamic light included (what the computeLightValue hook returns)
+    int getEmittedLight(int x, int y, int z);
+
+    boolean isAreaLoaded(int x, int y, int z, int radius);
+}
@@ -1,6 +1,7 @@
 package com.awesomehippo.clientdynamiclight;
 
 import com.awesomehippo.clientdynamiclight.config.EntityConfigLoader;
+import com.awesomehippo.clientdynamiclight.config.GeneralConfigLoader;
 import com.awesomehippo.clientdynamiclight.config.ItemsConfigLoader;
 import com.awesomehippo.clientdynamiclight.keybinds.KeyHandler;
 import cpw.mods.fml.client.registry.ClientRegistry;
@@ -20,6 +21,7 @@ public class ClientDynamicLight {
         // load config files (still separated)
         ItemsConfigLoader.INSTANCE.loadConfig();
         EntityConfigLoader.INSTANCE.loadConfig();
+        GeneralConfigLoader.INSTANCE.loadConfig();
     }
 
 
@@ -32,6 +34,8 @@ public class ClientDynamicLight {
         if (FMLCommonHandler.instance().getSide().isClient()) {
             ClientRegistry.registerKeyBinding(KeyHandler.openConfig);
             ClientRegistry.registerKeyBinding(KeyHandler.toggleDynamicLight);
+            ClientRegistry.registerKeyBinding(KeyHandler.toggleStats);
+            ClientRegistry.registerKeyBinding(KeyHandler.recordTrace);
             FMLCommonHandler.instance().bus().register(new KeyHandler());
         }
     }
@@ -1,8 +1,11 @@
 package com.awesomehippo.clientdynamiclight;
 
-import com.awesomehippo.clientdynamiclight.config.EntityConfigLoader;
-import com.awesomehippo.clientdynamiclight.config.ItemsConfigLoader;
-import cpw.mods.fml.client.FMLClientHandler;
+import com.awesomehippo.clientdynamiclight.config.GeneralConfigLoader;
+import com.awesomehippo.clientdynamiclight.util.IntObjectHashMap;
+import com.awesomehippo.clientdynamiclight.util.LongByteHashMap;
+import com.awesomehippo.clientdynamiclight.util.PackedPos;
+import com.awesomehippo.clientdynamiclight.util.SectionMask;
+import cpw.mods.fml.common.eventhandler.EventPriority;
 import cpw.mods.fml.common.eventhandler.SubscribeEvent;
 import cpw.mods.fml.common.gameevent.TickEvent;
 import cpw.mods.fml.relauncher.Side;
@@ -11,23 +14,23 @@ import net.minecraft.block.Block;
 import net.minecraft.block.material.Material;
 import net.minecraft.client.Minecraft;
 import net.minecraft.entity.Entity;
-import net.minecraft.entity.item.EntityItem;
 import net.minecraft.entity.player.EntityPlayer;
-import net.minecraft.item.ItemStack;
-import net.minecraft.util.AxisAlignedBB;
+import net.minecraft.profiler.Profiler;
+import net.minecraft.util.ChatComponentText;
 import net.minecraft.util.MathHelper;
 import net.minecraft.world.EnumSkyBlock;
 import net.minecraft.world.IBlockAccess;
 import net.minecraft.world.World;
-import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraftforge.client.event.RenderGameOverlayEvent;
+import net.minecraftforge.event.entity.EntityJoinWorldEvent;
+import net.minecraftforge.event.world.ChunkEvent;
+import net.minecraftforge.event.world.WorldEvent;
 
+import java.io.File;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
 
 @SideOnly(Side.CLIENT)
 public enum ClientDynamicLightHandler {
@@ -36,39 +39,46 @@ public enum ClientDynamicLightHandler {
     private static final int MAX_UPDATES_PER_TICK = 16; // can tweak this, 16 definitely avoid lag spike
     private static final int LIGHT_CHANGE_THRESHOLD = 1;
     private static final int CLEANUP_TIMEOUT = 20;
-    private static final int SCAN_RANGE = Math.min(Minecraft.getMinecraft().gameSettings.renderDistanceChunks * 16, 64);
-
-    // may replace these maps with an unified WorldLightData class
-    private final ConcurrentHashMap<World, Map<Integer, DynamicLightSource>> worldLightsMap = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<World, Map<Long, List<DynamicLightSource>>> worldLightPositions = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<World, Map<Long, Integer>> worldDynamicMaxLevels = new ConcurrentHashMap<>();
-    private final PriorityBlockingQueue<UpdateEntry> pendingRenderUpdates = new PriorityBlockingQueue<>();
-
-    private final ThreadPoolExecutor executor;
-
-    // necessary to avoid repeated lookups
-    private volatile IBlockAccess lastWorld;
-    private volatile Map<Integer, DynamicLightSource> lastLightMap;
-    private volatile Map<Long, List<DynamicLightSource>> lastLightPositions;
-    private volatile Map<Long, Integer> lastMaxLevels;
+    private static final int MAX_SCAN_RANGE = 64; // blocks, less if the render distance is shorter
+    private static final boolean TIME_SLICED_SCAN = true; // false to rescan the whole cube every tick
+    private static final boolean CLUSTER_SOURCES = true; // false to give every light its own source, even in a pile
+    private static final int SLICED_SCAN_BUDGET = 256; // entities of outer sectors per tick before they're scanned less often
+    private static final int MAX_OFFSCREEN_UPDATES_PER_TICK = 2; // out of MAX_UPDATES_PER_TICK, when view aware
+    private static final int MAX_OFFSCREEN_SECTIONS_PER_TICK = 4; // overlay re-renders, when view aware
+
+    // per-world data lives on the World itself (LightDataHolder), this is only for a World the transformer missed
+    private final ConcurrentHashMap<World, WorldLightData> unpatchedWorlds = new ConcurrentHashMap<>();
+    private final RenderUpdateQueue pendingRenderUpdates = new RenderUpdateQueue(); // coalesced, nearest first
+    private final long[] drainedUpdates = new long[MAX_UPDATES_PER_TICK * 2]; // some of them won't need a real relight
+    private final RelightBatcher relightBatcher = new RelightBatcher();
+
+    // scratch buffers reused by every scan result, only touched on the client thread
+    private final SeenEntities seen = new SeenEntities();
+    private final SeenEntities clustered = new SeenEntities();
+    private final SourceClusters clusters = new SourceClusters();
+    private int scanStamp;
+    private final List<DynamicLightSource> purgedSources = new ArrayList<>();
+
+    // entities that may emit light, fed by forge events instead of an AABB sweep every tick
+    private final EmitterCandidates candidates = new EmitterCandidates();
+    private final ArrayDeque<ScannerRunnable> spareScans = new ArrayDeque<>(); // scans are reused with their snapshot
+    private final ScanSlicer slicer = new ScanSlicer(SLICED_SCAN_BUDGET);
+    private long scanTick;
+
+    final TraceRecorder recorder = new TraceRecorder(); // off unless a trace is being recorded
+    private final LightStats stats = new LightStats(); // always counting, only drawn when toggled on
+    private final MetricsFile metrics = new MetricsFile(); // off unless enabled in the general config
+    private int pendingAfterDrain;
+
+    // one scan in flight and one waiting, newer snapshots replace the waiting one
+    private final ScanScheduler scanScheduler = new ScanScheduler("ClientDynamicLight scan");
+    private final LightLevelMemo levelMemo = new LightLevelMemo(); // scan worker only, it never runs two scans at once
+
+    // lighting mode the current lights were applied with (GeneralConfigLoader can change under us)
+    private volatile boolean overlayMode = GeneralConfigLoader.INSTANCE.isOverlayMode();
 
     public boolean dynamicLightEnabled = true;
 
-    final int cores = Runtime.getRuntime().availableProcessors();
-    final int maxThreads = cores/2; // half of the cores or whatever is reasonable
-    ClientDynamicLightHandler() {
-        ThreadFactory factory = r -> {
-            Thread t = new Thread(r);
-            t.setDaemon(true);
-            t.setPriority(Thread.MIN_PRIORITY); //min_priority or norm -1 should be good
-            return t;
-        };
-        executor = new ThreadPoolExecutor(1, maxThreads, 60L, TimeUnit.SECONDS,
-                new LinkedBlockingQueue<>(1000), // 1000 tasks max
-                factory,
-                new ThreadPoolExecutor.DiscardOldestPolicy()); // drop oldest tasks if queue is full
-    }
-
     /* toggle the mod and clean up if disabling */
     public void toggle() {
         dynamicLightEnabled = !dynamicLightEnabled;
@@ -85,25 +95,59 @@ public enum ClientDynamicLightHandler {
     private void cleanupWorldAddedLights(World world) {
         if (world == null) return;
 
-        Map<Long, List<DynamicLightSource>> lightPositions = worldLightPositions.get(world);
-        if (lightPositions != null) {
-            for (long packed : lightPositions.keySet()) {
-                final int[] c = unpackPosition(packed);
-                FMLClientHandler.instance().getClient().func_152344_a(() -> {
-                    world.updateLightByType(EnumSkyBlock.Block, c[0], c[1], c[2]);
-                });
+        WorldLightData data = dataOf(world);
+        if (data == null) return;
+
+        // the relight below reads the emitted light from these, they have to be empty before it runs
+        data.lightMap.clear();
+        data.maxLevels.clear();
+        data.sectionMask.clear();
+
+        LightSourceIndex lightIndex = data.index;
+        if (overlayMode) {
+            // nothing was written to the world, re-rendering around the sources is enough
+            LightOverlay overlay = data.overlay();
+            for (int i = 0; i < lightIndex.sectionCount(); i++) {
+                LightSourceIndex.Section section = lightIndex.sectionAt(i);
+                for (int j = 0; j < section.size(); j++) {
+                    DynamicLightSource s = section.get(j);
+                    overlay.markChanged(s.x, s.y, s.z);
+                }
             }
-            lightPositions.clear();
-        }
+            lightIndex.clear();
+            overlay.flush(null, 0);
+        } else {
+            // relights still pending were already darkened/lit in the max levels, they go in the batch too
+            long[] positions = new long[pendingRenderUpdates.size() + lightIndex.size()];
+            int count = pendingRenderUpdates.drainAll(positions);
+            for (int i = 0; i < lightIndex.sectionCount(); i++) {
+                LightSourceIndex.Section section = lightIndex.sectionAt(i);
+                for (int j = 0; j < section.size(); j++) {
+                    if (isDuplicatePosition(section, j)) continue;
+                    DynamicLightSource s = section.get(j);
+                    positions[count++] = PackedPos.pack(s.x, s.y, s.z);
+                }
+            }
+            lightIndex.clear();
 
-        Map<Integer, DynamicLightSource> lightMap = worldLightsMap.get(world);
-        if (lightMap != null) lightMap.clear();
+            // one batch for everything, right away (callers are on the client thread)
+            relightBatcher.relight(world, positions, count, Integer.MAX_VALUE, null);
+        }
+    }
 
-        Map<Long, Integer> maxLevels = worldDynamicMaxLevels.get(world);
-        if (maxLevels != null) maxLevels.clear();
+    // true if an earlier source of the section sits at the same block (sections are small)
+    private static boolean isDuplicatePosition(LightSourceIndex.Section section, int j) {
+        DynamicLightSource s = section.get(j);
+        for (int k = 0; k < j; k++) {
+            DynamicLightSource other = section.get(k);
+            if (other.x == s.x && other.y == s.y && other.z == s.z) return true;
+        }
+        return false;
     }
 
     private World previousWorld = null;
+    private final IntPredicate isEntityGone = this::isEntityGone; // bound once, asked about every source every tick
+
     // main part running every tick to update lights
     @SubscribeEvent
     public void onClientTick(TickEvent.ClientTickEvent event) {
@@ -117,395 +161,646 @@ public enum ClientDynamicLightHandler {
         if (world != previousWorld) {
             if (previousWorld != null) {
                 cleanupWorldAddedLights(previousWorld);
-                pendingRenderUpdates.clear();
-                executor.getQueue().clear();
+                recorder.stop(); // a trace never spans two worlds
+                metrics.close();
+                unpatchedWorlds.remove(previousWorld);
+                candidates.clear();
+                pendingRenderUpdates.clear(); // only overlay leftovers by now, cleanup relit the rest
+                scanScheduler.clearPending(); // a running scan's result is dropped when it arrives
             }
             previousWorld = world;
         }
 
+        // switching mode: take the lights out the way they were applied, the next scans bring them back
+        boolean wantOverlay = GeneralConfigLoader.INSTANCE.isOverlayMode();
+        if (wantOverlay != overlayMode) {
+            if (world != null) {
+                cleanupWorldAddedLights(world); // relights what's pending too
+            }
+            pendingRenderUpdates.clear();
+            overlayMode = wantOverlay;
+        }
+
+        // what the scans that finished since the last tick saw
+        applyScanResults(world);
+
         if (world == null || player == null || mc.currentScreen != null) { // avoid running checks on menus
             return;
         }
 
-        //
-        scanEntitiesInRange(world, player);
+        // what's on screen gets the budget first (null = no culling), the scan keeps the view for its sectors
+        ScannerRunnable scan = spareScans.isEmpty() ? new ScannerRunnable() : spareScans.pop();
+        ViewCone view = GeneralConfigLoader.INSTANCE.isViewAwareUpdates() ? ViewCone.capture(mc, scan.viewCone) : null;
+
+        Profiler profiler = mc.mcProfiler;
+        profiler.startSection("clientdynamiclight");
+        profiler.startSection("scan");
+        long start = System.nanoTime();
+        scanEntitiesInRange(world, player, view, scan);
+        long scanned = System.nanoTime();
+
+        profiler.endStartSection("sources");
         updateLightPositions(world);
-        applyRenderUpdates(world);
+        long updated = System.nanoTime();
+        int queued = pendingRenderUpdates.size() - pendingAfterDrain;
+
+        int relights = 0;
+        if (overlayMode) {
+            profiler.endStartSection("overlay");
+            dataFor(world).overlay().flush(view, MAX_OFFSCREEN_SECTIONS_PER_TICK);
+        } else {
+            profiler.endStartSection("relight");
+            relights = applyRenderUpdates(world, player, view);
+        }
+        long relit = System.nanoTime();
+        pendingAfterDrain = pendingRenderUpdates.size();
+
+        profiler.endStartSection("stats");
+        record(LightStats.SCAN, scanned - start);
+        record(LightStats.SOURCES, updated - scanned);
+        record(LightStats.RELIGHT, relit - updated);
+        WorldLightData data = dataOf(world);
+        int sources = data != null ? data.lightMap.size() : 0;
+        queued = Math.max(0, queued);
+        LightEvents.emit(LightEvents.FADE_TICK, updated - scanned, sources, queued);
+        stats.tick(pendingAfterDrain, sources, relights, queued);
+        metrics.tick(GeneralConfigLoader.INSTANCE.isMetricsFile(), world.getTotalWorldTime(),
+                sources, pendingAfterDrain, queued, relights, stats.droppedTasks());
+        recorder.endTick(world.getTotalWorldTime(), player, view);
+        profiler.endSection();
+        profiler.endSection();
+    }
+
+    // phase timings go to the overlay stats and the metrics file
+    private void record(int phase, long nanos) {
+        stats.record(phase, nanos);
+        metrics.record(phase, nanos);
+    }
+
+    /* light data of a world or chunk cache, a single field read once the transformer ran (null if none yet) */
+    private static WorldLightData dataOf(IBlockAccess world) {
+        if (world instanceof LightDataHolder) {
+            return ((LightDataHolder) world).getDynamicLightData();
+        }
+        return world instanceof World ? INSTANCE.unpatchedWorlds.get(world) : null;
+    }
+
+    /* same but creates it, client thread only */
+    private WorldLightData dataFor(World world) {
+        WorldLightData data = dataOf(world);
+        if (data != null) return data;
+
+        data = new WorldLightData(world);
+        if (world instanceof LightDataHolder) {
+            ((LightDataHolder) world).setDynamicLightData(data);
+        } else {
+            unpatchedWorlds.put(world, data);
+        }
+        return data;
     }
 
     /* scan for entities that might emit light within range */
-    private void scanEntitiesInRange(World world, EntityPlayer player) {
-        AxisAlignedBB range = AxisAlignedBB.getBoundingBox(
-                player.posX - SCAN_RANGE, player.posY - SCAN_RANGE, player.posZ - SCAN_RANGE,
-                player.posX + SCAN_RANGE, player.posY + SCAN_RANGE, player.posZ + SCAN_RANGE
-        );
-        List<Entity> entityList = world.getEntitiesWithinAABB(Entity.class, range);
-        executor.execute(new ScannerRunnable(world, player, entityList));
+    private void scanEntitiesInRange(World world, EntityPlayer player, ViewCone view, ScannerRunnable scan) {
+        candidates.sync(world); // no-op unless the world or the entity config changed
+
+        int playerChunkX = MathHelper.floor_double(player.posX) >> 4;
+        int playerChunkZ = MathHelper.floor_double(player.posZ) >> 4;
+        int range = Math.min(Minecraft.getMinecraft().gameSettings.renderDistanceChunks * 16, MAX_SCAN_RANGE);
+        scan.set(world, range, scanTick++, playerChunkX, playerChunkZ, slicer.scale(), view);
+
+        EntitySnapshot snapshot = scan.snapshot;
+        snapshot.begin(player);
+        // sectors not due this tick are never copied, the range check happens on the worker
+        candidates.collect(snapshot, TIME_SLICED_SCAN ? scan.dueSectors : null);
+        ScanScheduler.Scan replaced = scanScheduler.submit(scan);
+        if (replaced != null) { // the waiting scan never ran
+            stats.taskDropped();
+            recycle((ScannerRunnable) replaced);
+        }
+    }
+
+    // applies the latest finished scan, an older one that finished in between is outdated and only reused
+    private void applyScanResults(World world) {
+        ScannerRunnable stale = (ScannerRunnable) scanScheduler.takeStale();
+        if (stale != null) {
+            stats.taskDropped();
+            recycle(stale);
+        }
+
+        ScannerRunnable result = (ScannerRunnable) scanScheduler.takeResult();
+        if (result == null) return;
+        if (result.world != world) { // we left that world since
+            stats.taskDropped();
+        } else {
+            result.apply();
+        }
+        recycle(result);
+    }
+
+    // a couple of scans are in flight at most
+    private void recycle(ScannerRunnable scan) {
+        scan.world = null; // don't keep a world we may have left
+        if (spareScans.size() < 4) {
+            spareScans.push(scan);
+        }
+    }
+
+    /* candidate set upkeep, events also fire for the integrated server worlds so only keep client ones */
+    @SubscribeEvent(priority = EventPriority.LOWEST) // last, so we never see a join another mod cancels
+    public void onEntityJoinWorld(EntityJoinWorldEvent event) {
+        if (event.world.isRemote) {
+            candidates.offer(event.entity);
+        }
+    }
+
+    @SubscribeEvent
+    public void onChunkLoad(ChunkEvent.Load event) {
+        if (event.world.isRemote) {
+            candidates.onChunkLoad(event.getChunk());
+        }
+    }
+
+    @SubscribeEvent
+    public void onChunkUnload(ChunkEvent.Unload event) {
+        if (event.world.isRemote) {
+            candidates.onChunkUnload(event.getChunk());
+            purgeChunkSources(event.world, event.getChunk());
+        }
+    }
+
+    @SubscribeEvent
+    public void onWorldUnload(WorldEvent.Unload event) {
+        if (event.world.isRemote) {
+            candidates.clear();
+        }
+    }
+
+    // the chunk is gone, so just forget its sources (no relight needed)
+    private void purgeChunkSources(World world, Chunk chunk) {
+        WorldLightData data = dataOf(world);
+        if (data == null) return;
+
+        LightSourceIndex lightIndex = data.index;
+
+        int minX = chunk.xPosition << 4;
+        int minZ = chunk.zPosition << 4;
+        purgedSources.clear();
+        if (lightIndex.purgeRegion(minX, Integer.MIN_VALUE, minZ, minX + 15, Integer.MAX_VALUE, minZ + 15, purgedSources) == 0) {
+            return;
+        }
+
+        LightOverlay overlay = data.overlayIfPresent();
+        if (overlay != null) {
+            overlay.invalidate();
+        }
+
+        for (int i = 0; i < purgedSources.size(); i++) {
+            DynamicLightSource s = purgedSources.get(i);
+            if (data.lightMap.get(s.entityId) == s) {
+                data.lightMap.remove(s.entityId);
+            }
+            if (data.maxLevels.remove(PackedPos.pack(s.x, s.y, s.z)) > 0) {
+                data.sectionMask.remove(s.x, s.y, s.z);
+            }
+        }
+        purgedSources.clear();
     }
 
     /* update/remove light sources, and queue updates */
     private void updateLightPositions(World world) {
-        Map<Integer, DynamicLightSource> lightMap = worldLightsMap.get(world);
-        if (lightMap == null) return;
+        WorldLightData data = dataOf(world);
+        if (data == null) return;
 
-        long currentTime = world.getTotalWorldTime();
-        Iterator<Map.Entry<Integer, DynamicLightSource>> it = lightMap.entrySet().iterator();
-        Map<Long, List<DynamicLightSource>> lightPositions = worldLightPositions.get(world);
+        updateLightPositions(data, world.getTotalWorldTime(), isEntityGone);
+    }
 
-        while (it.hasNext()) {
-            Map.Entry<Integer, DynamicLightSource> entry = it.next();
-            DynamicLightSource source = entry.getValue();
-            Entity entity = world.getEntityByID(entry.getKey());
+    // previousWorld is the current world by now, onClientTick updates it first
+    private boolean isEntityGone(int id) {
+        Entity entity = previousWorld.getEntityByID(id);
+        return entity == null || entity.isDead;
+    }
 
-            // gone entity
-            if (entity == null || entity.isDead) {
+    /* world independent part (trace replays run it too), `isGone` tells if an entity left or died */
+    void updateLightPositions(WorldLightData data, long currentTime, IntPredicate isGone) {
+        IntObjectHashMap<DynamicLightSource> lightMap = data.lightMap;
+        LightSourceIndex lightIndex = data.index;
+
+        // backwards since removeAt() moves the last entry into the hole
+        for (int i = lightMap.size() - 1; i >= 0; i--) {
+            DynamicLightSource source = lightMap.valueAt(i);
+            boolean gone = isGone.test(lightMap.keyAt(i));
+            if (gone) {
+                recorder.gone(lightMap.keyAt(i));
                 source.targetLevel = 0;
             }
 
-            boolean changed = source.tickUpdateLevel();
+            // far sources step a few levels every few ticks (see LightLod)
+            int step = LightLod.fadeStep(source.lod, currentTime, source.entityId);
+            boolean changed = step > 0 && source.tickUpdateLevel(step);
             if (changed) {
-                long pos = packPosition(source.x, source.y, source.z);
-                updateMaxAndQueue(world, pos, lightPositions); // queue since level changed
+                long pos = PackedPos.pack(source.x, source.y, source.z);
+                updateMaxAndQueue(data, pos); // queue since level changed
             }
 
             if (source.level == 0 && source.targetLevel == 0) {
                 // only now the level is at 0 so we can clean up
-                long pos = packPosition(source.x, source.y, source.z);
-
-                if (lightPositions != null) {
-                    List<DynamicLightSource> list = lightPositions.get(pos);
-                    if (list != null) {
-                        list.remove(source);
-                        if (list.isEmpty()) {
-                            lightPositions.remove(pos);
-                        }
-                    }
-                }
-                updateMaxAndQueue(world, pos, lightPositions);
-                it.remove();
-            } else if ((entity == null || entity.isDead) && currentTime - source.lastSeen > CLEANUP_TIMEOUT) {
+                long pos = PackedPos.pack(source.x, source.y, source.z);
+
+                lightIndex.remove(source);
+                updateMaxAndQueue(data, pos);
+                lightMap.removeAt(i);
+            } else if (gone && currentTime - source.lastSeen > CLEANUP_TIMEOUT) {
                 // force clean up, even if level > 0, to prevent ghosts
                 source.targetLevel = 0;
                 source.level = 0;
-                long pos = packPosition(source.x, source.y, source.z);
-                if (lightPositions != null) {
-                    List<DynamicLightSource> list = lightPositions.get(pos);
-                    if (list != null) {
-                        list.remove(source);
-                        if (list.isEmpty()) {
-                            lightPositions.remove(pos);
-                        }
-                    }
-                }
-                updateMaxAndQueue(world, pos, lightPositions);
-                it.remove();
+                long pos = PackedPos.pack(source.x, source.y, source.z);
+                lightIndex.remove(source);
+                updateMaxAndQueue(data, pos);
+                lightMap.removeAt(i);
             }
         }
     }
 
     /* calculate max light level at a position and queue updates (if necessary) */
-    private void updateMaxAndQueue(World world, long pos, Map<Long, List<DynamicLightSource>> lightPositions) {
-        List<DynamicLightSource> sources = lightPositions.get(pos);
-        int newMax = 0;
-        if (sources != null && !sources.isEmpty()) {
-            for (DynamicLightSource s : sources) {
-                newMax = Math.max(newMax, s.level);
-            }
+    void updateMaxAndQueue(WorldLightData data, long pos) {
+        if (overlayMode) { // never written to the world, just re-render around it
+            data.overlay().markChanged(PackedPos.x(pos), PackedPos.y(pos), PackedPos.z(pos));
+            return;
         }
 
-        Map<Long, Integer> maxLevels = worldDynamicMaxLevels.computeIfAbsent(world, k -> new ConcurrentHashMap<>());
-        int oldMax = maxLevels.getOrDefault(pos, 0);
+        int newMax = data.index.maxLevelAt(PackedPos.x(pos), PackedPos.y(pos), PackedPos.z(pos));
+
+        LongByteHashMap maxLevels = data.maxLevels;
+        int oldMax = maxLevels.get(pos);
 
         // only queue if the light level change is significant (may adjust LIGHT_CHANGE_THRESHOLD)
         if (Math.abs(newMax - oldMax) >= LIGHT_CHANGE_THRESHOLD) {
-            int[] c = unpackPosition(pos);
-            queueRenderUpdate(c[0], c[1], c[2]);
-            if (newMax == 0) {
-                maxLevels.remove(pos);
-            } else {
-                maxLevels.put(pos, newMax);
+            int x = PackedPos.x(pos), y = PackedPos.y(pos), z = PackedPos.z(pos);
+            queueRenderUpdate(x, y, z);
+            maxLevels.put(pos, newMax); // 0 removes it
+
+            // keep the section filter in sync, the hook trusts it blindly
+            SectionMask sectionMask = data.sectionMask;
+            if (oldMax == 0) {
+                sectionMask.add(x, y, z);
+            } else if (newMax == 0) {
+                sectionMask.remove(x, y, z);
             }
         }
     }
 
     private void queueRenderUpdate(int x, int y, int z) {
-        long pos = packPosition(x, y, z);
-        EntityPlayer player = Minecraft.getMinecraft().thePlayer;
-        if (player == null) return;
-        double dx = x - player.posX, dy = y - player.posY, dz = z - player.posZ;
-        double distSq = dx*dx + dy*dy + dz*dz;
-        pendingRenderUpdates.add(new UpdateEntry(pos, distSq));
+        pendingRenderUpdates.add(PackedPos.pack(x, y, z)); // already pending = nothing to do
     }
 
-    private void applyRenderUpdates(World world) {
-        if (pendingRenderUpdates.isEmpty()) return;
+    private int applyRenderUpdates(World world, EntityPlayer player, ViewCone view) {
+        if (pendingRenderUpdates.isEmpty()) return 0;
+
+        // ordered against where the player is now (and looks), not where it was when queued
+        long start = System.nanoTime();
+        int count = pendingRenderUpdates.drainNearest(player.posX, player.posY, player.posZ, view,
+                drainedUpdates.length, MAX_OFFSCREEN_UPDATES_PER_TICK, drainedUpdates);
+        long drained = System.nanoTime();
+        // only real relights count against the budget, the rest goes back to the queue
+        int relights = relightBatcher.relight(world, drainedUpdates, count, MAX_UPDATES_PER_TICK, pendingRenderUpdates);
+        LightEvents.emit(LightEvents.QUEUE_DRAIN, drained - start, count, pendingRenderUpdates.size());
+        LightEvents.emit(LightEvents.RELIGHT_BATCH, System.nanoTime() - drained, count, relights);
+        return relights;
+    }
 
-        int count = 0;
-        while (!pendingRenderUpdates.isEmpty() && count < MAX_UPDATES_PER_TICK) {
-            UpdateEntry entry = pendingRenderUpdates.poll();
-            int[] c = unpackPosition(entry.pos);
-            world.updateLightByType(EnumSkyBlock.Block, c[0], c[1], c[2]);
-            count++;
-        }
+    /* same against any block light, for trace replays. Returns how many relights were done */
+    int applyRenderUpdates(BlockLightAccess access, double px, double py, double pz, ViewCone view) {
+        if (pendingRenderUpdates.isEmpty()) return 0;
+
+        int count = pendingRenderUpdates.drainNearest(px, py, pz, view,
+                drainedUpdates.length, MAX_OFFSCREEN_UPDATES_PER_TICK, drainedUpdates);
+        return relightBatcher.relight(access, drainedUpdates, count, MAX_UPDATES_PER_TICK, pendingRenderUpdates);
+    }
+
+    int pendingRenderUpdates() {
+        return pendingRenderUpdates.size();
     }
 
     // for the transformer
     public static int getLightValue(IBlockAccess world, Block block, int x, int y, int z) {
-        int vanilla = block.getLightValue(world, x, y, z);
-        if (world instanceof WorldServer || !INSTANCE.dynamicLightEnabled) {
-            return vanilla;
-        }
+        // server worlds never get any data, so no need to check for them
+        WorldLightData data = INSTANCE.dynamicLightEnabled ? dataOf(world) : null;
 
-        if (!world.equals(INSTANCE.lastWorld) || INSTANCE.lastLightMap == null) {
-            INSTANCE.lastWorld = world;
-            INSTANCE.lastLightMap = INSTANCE.worldLightsMap.get(world);
-            INSTANCE.lastLightPositions = INSTANCE.worldLightPositions.get(world);
-            INSTANCE.lastMaxLevels = INSTANCE.worldDynamicMaxLevels.get(world);
-        }
-
-        Map<Long, Integer> maxLevels = INSTANCE.lastMaxLevels;
-        if (maxLevels != null) {
-            long pos = packPosition(x, y, z);
-            Integer dyn = maxLevels.get(pos);
-            if (dyn != null) {
-                return Math.max(vanilla, dyn);
-            }
+        // almost every call is for a section without any dynamic light, so a single bit test is enough
+        if (data == null || !data.sectionMask.mayContain(x, y, z)) {
+            return block.getLightValue(world, x, y, z);
         }
 
-        return vanilla;
+        int vanilla = block.getLightValue(world, x, y, z);
+        int dyn = data.maxLevels.get(PackedPos.pack(x, y, z)); // no boxing here, this runs for every relit block
+        return dyn > 0 ? Math.max(vanilla, dyn) : vanilla;
     }
 
+    // for the transformer, end of every getLightBrightnessForSkyBlocks (block light is in bits 4-7)
+    public static int getLightBrightness(int brightness, IBlockAccess world, int x, int y, int z) {
+        if (!INSTANCE.overlayMode || !INSTANCE.dynamicLightEnabled) {
+            return brightness;
+        }
+        WorldLightData data = dataOf(world); // a ChunkCache resolves to the world it was built from
+        LightOverlay overlay = data != null ? data.overlayIfPresent() : null;
+        if (overlay == null) {
+            return brightness;
+        }
 
-    // position utils since there's no blockpos on 1.7
-    // todo: we could cache some frequent positions?
-    private static long packPosition(int x, int y, int z) {
-        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (y & 0xFFF) << 26) | (long) (z & 0x3FFFFFF);
+        int dyn = overlay.levelAt(x, y, z);
+        if (dyn <= ((brightness >> 4) & 15)) {
+            return brightness;
+        }
+        return (brightness & ~0xFF) | (dyn << 4);
     }
-    //*should be correct*
-    //TODO: real implementation of a BlockPos?
-    private static int[] unpackPosition(long packed) {
-        int x = (int) (packed >> 38);
-        int y = (int) ((packed >> 26) & 0xFFF);
-        int z = (int) (packed & 0x3FFFFFF);
-        if ((x & 0x2000000) != 0) x |= ~0x3FFFFFF;
-        if ((z & 0x2000000) != 0) z |= ~0x3FFFFFF;
 
-        return new int[]{x, y, z};
-    }
 
-    // holds the info for a light source
-    private static class DynamicLightSource { // should be fine to keep it in the same class
-        int x, y, z;
-        int level;
-        int targetLevel;
-        long lastSeen;
+    /*
+     * applies a scan result, world independent so trace replays go through the exact same steps.
+     * `mayFade` is asked about every source that wasn't seen, false keeps its level (its sector wasn't scanned)
+     */
+    void applyScan(WorldLightData data, SeenEntities seen, IntPredicate mayFade, long worldTime, int playerId) {
+        IntObjectHashMap<DynamicLightSource> lightMap = data.lightMap;
+        recorder.scan(worldTime, playerId, seen); // as seen, replays cluster them again
+
+        // lights close to each other become one source
+        if (CLUSTER_SOURCES) {
+            clusters.merge(seen, lightMap, playerId, clustered);
+            clustered.setOrigin(seen.originX, seen.originY, seen.originZ);
+            seen = clustered;
+        }
 
-        DynamicLightSource(int x, int y, int z, int level) {
-            this.x = x;
-            this.y = y;
-            this.z = z;
-            this.level = level;
-            this.targetLevel = level;
-            this.lastSeen = 0;
+        // update sources for seen entities (stamped so we know who wasn't seen)
+        int stamp = ++scanStamp;
+        for (int i = 0; i < seen.size; i++) {
+            double dx = seen.xs[i] - seen.originX;
+            double dy = seen.ys[i] - seen.originY;
+            double dz = seen.zs[i] - seen.originZ;
+            int lod = seen.ids[i] == playerId ? LightLod.NEAR : LightLod.tierOf(dx * dx + dy * dy + dz * dz);
+            updateLightSource(seen.ids[i], seen.xs[i], seen.ys[i], seen.zs[i], seen.levels[i], lod, stamp, worldTime, playerId, data);
         }
 
-        // for smoother transition
-        public boolean tickUpdateLevel() {
-            if (level == targetLevel) {
-                return false;
+        for (int i = 0; i < lightMap.size(); i++) {
+            DynamicLightSource source = lightMap.valueAt(i);
+            if (source.seenStamp != stamp && mayFade.test(source.entityId)) {
+                recorder.fade(source.entityId);
+                source.targetLevel = 0;
             }
-            if (level < targetLevel) level++;
-            else level--;
+        }
 
-            return true;
+        // transfer check for sources that need to increase light level:
+        // take over the level of a fading source right next to it
+        for (int i = 0; i < seen.size; i++) {
+            DynamicLightSource source = lightMap.get(seen.ids[i]);
+            if (source != null && source.level < source.targetLevel) {
+                int maxFading = data.index.maxFadingLevelAround(source.x, source.y, source.z, 1);
+                if (maxFading > source.level) {
+                    source.level = maxFading;
+                    updateMaxAndQueue(data, PackedPos.pack(source.x, source.y, source.z));
+                }
+            }
         }
     }
 
-    /* queue entry for light updates (sorted by distance currently) - may move this and DynamicLightSource to another files */
-    private static class UpdateEntry implements Comparable<UpdateEntry> {
-        long pos;
-        double distSq;
+    /*
+     * scan of one tick: range check and light levels on the worker, then applied on the client thread once the
+     * scheduler hands it over. Reused for later ticks along with its snapshot and view (see recycle())
+     */
+    static class ScannerRunnable implements ScanScheduler.Scan {
+        final EntitySnapshot snapshot = new EntitySnapshot(); // filled on the client thread before submit
+        final ViewCone viewCone = new ViewCone(); // same, `view` points to it when culling
+        private World world;
+        private int range;
+        private int outerCount; // entities of outer sectors in the last classify()
+        private int entityCount; // in range, from run()
+        private long classifyNanos;
+
+        // sector schedule of this scan (see ScanSlicer)
+        private long tick;
+        private int playerChunkX, playerChunkZ;
+        private int sliceScale;
+        private ViewCone view;
+
+        private final IntPredicate mayFade = this::mayFade; // bound once, the scan is reused
+        final ScanSlicer.DueSectors dueSectors = new ScanSlicer.DueSectors((MAX_SCAN_RANGE >> 4) + 1);
+
+        ScannerRunnable set(World world, int range, long tick, int playerChunkX, int playerChunkZ, int sliceScale, ViewCone view) {
+            this.world = world;
+            this.range = range;
+            this.tick = tick;
+            this.playerChunkX = playerChunkX;
+            this.playerChunkZ = playerChunkZ;
+            this.sliceScale = sliceScale;
+            this.view = view;
+            if (TIME_SLICED_SCAN) {
+                dueSectors.set(tick, playerChunkX, playerChunkZ, sliceScale, view);
+            }
+            return this;
+        }
 
-        UpdateEntry(long pos, double distSq) {
-            this.pos = pos;
-            this.distSq = distSq;
+        // true if the sector holding this block was scanned by this task
+        private boolean isScanned(int blockX, int blockZ) {
+            return !TIME_SLICED_SCAN || dueSectors.contains(blockX, blockZ);
         }
 
         @Override
-        public int compareTo(UpdateEntry o) { // closer updates first!
-            return Double.compare(distSq, o.distSq);
+        public void run() {
+            long start = System.nanoTime();
+            entityCount = classify();
+            ParallelClassifier.classify(snapshot, INSTANCE.levelMemo); // light levels, fork-joined for big scans
+            classifyNanos = System.nanoTime() - start;
+            LightEvents.emit(LightEvents.SCAN, classifyNanos, snapshot.size, entityCount);
         }
-    }
 
-    /* async task to scan for entities light sources */
-    private static class ScannerRunnable implements Runnable {
-        private final World world;
-        private final EntityPlayer player;
-        private final List<Entity> entityList;
+        /* client thread, run light updates */
+        void apply() {
+            Profiler profiler = Minecraft.getMinecraft().mcProfiler;
+            profiler.startSection("clientdynamiclight");
+            profiler.startSection("apply");
+            long applyStart = System.nanoTime();
+
+            WorldLightData data = INSTANCE.dataFor(world);
+            IntObjectHashMap<DynamicLightSource> lightMap = data.lightMap;
+            EntitySnapshot s = snapshot;
+
+            SeenEntities seen = INSTANCE.seen;
+            seen.clear();
+            seen.setOrigin(s.playerX, s.playerY, s.playerZ);
+
+            // handle player's wielded item light first
+            if (!isInLava(s.playerX, s.playerY, s.playerZ)) {
+                seen.add(s.playerId, s.playerLevel, s.playerX, s.playerY, s.playerZ,
+                        s.playerItemId, s.playerItemDamage, s.playerBurning);
+            }
 
-        ScannerRunnable(World world, EntityPlayer player, List<Entity> entityList) {
-            this.world = world;
-            this.player = player;
-            this.entityList = entityList;
+            // then handle other entities, levels were worked out on the worker
+            for (int k = 0; k < entityCount; k++) {
+                int i = s.inRange[k];
+                int lightLevel = s.levels[k];
+                if (lightLevel <= 0 && !lightMap.containsKey(s.ids[i])) continue;
+                if (isInLava(s.xs[i], s.ys[i], s.zs[i])) continue;
+
+                seen.add(s.ids[i], lightLevel, s.xs[i], s.ys[i], s.zs[i], s.itemIds[i], s.itemDamages[i], s.isBurning(i));
+            }
+            INSTANCE.slicer.report(outerCount);
+
+            INSTANCE.applyScan(data, seen, mayFade, world.getTotalWorldTime(), s.playerId);
+
+            INSTANCE.record(LightStats.CLASSIFY, classifyNanos);
+            INSTANCE.record(LightStats.APPLY, System.nanoTime() - applyStart);
+            INSTANCE.stats.scanApplied(seen.size);
+            INSTANCE.metrics.scanApplied(seen.size);
+            profiler.endSection();
+            profiler.endSection();
         }
 
-        @Override
-        public void run() {
-            double px = player.posX;
-            double py = player.posY;
-            double pz = player.posZ;
-            double rangeSq = SCAN_RANGE * SCAN_RANGE;
+        // sources that weren't seen this scan start fading out, unless this scan skipped their sector
+        private boolean mayFade(int id) {
+            DynamicLightSource source = dataOf(world).lightMap.get(id);
+            if (!isScanned(source.x, source.z)) return false;
 
-            List<Entity> entities = new ArrayList<>();
+            // the entity may have just walked into a sector that wasn't scanned
+            Entity e = TIME_SLICED_SCAN ? world.getEntityByID(id) : null;
+            return e == null || isScanned(MathHelper.floor_double(e.posX), MathHelper.floor_double(e.posZ));
+        }
 
-            for (Entity e : entityList) {
-                // filter entities within range and skip player
-                if (e == player) continue;
+        // lava lights the block already (client thread, the worker never reads blocks)
+        private boolean isInLava(double x, double y, double z) {
+            return world.getBlock(MathHelper.floor_double(x), MathHelper.floor_double(y), MathHelper.floor_double(z))
+                    .getMaterial() == Material.lava;
+        }
 
-                double ex = e.posX - px;
-                double ey = e.posY - py;
-                double ez = e.posZ - pz;
+        /* lists the snapshot entries within range (and in a sector due this tick) in snapshot.inRange, returns how many */
+        int classify() {
+            EntitySnapshot s = snapshot;
+            double px = s.playerX;
+            double py = s.playerY;
+            double pz = s.playerZ;
+            double rangeSq = (double) range * range;
+
+            // filter entities within range and skip player (the snapshot only holds sectors due this tick)
+            int count = 0;
+            int outer = 0;
+            for (int i = 0; i < s.size; i++) {
+                if (s.ids[i] == s.playerId) continue;
+
+                double ex = s.xs[i] - px;
+                double ey = s.ys[i] - py;
+                double ez = s.zs[i] - pz;
                 if (ex * ex + ey * ey + ez * ez > rangeSq) continue;
 
-                entities.add(e);
-            }
+                int blockX = MathHelper.floor_double(s.xs[i]);
+                int blockZ = MathHelper.floor_double(s.zs[i]);
+                if (ScanSlicer.isOuter(playerChunkX, playerChunkZ, blockX >> 4, blockZ >> 4)) outer++;
 
-            // run light updates
-            FMLClientHandler.instance().getClient().func_152344_a(() -> {
-                Map<Integer, DynamicLightSource> lightMap = INSTANCE.worldLightsMap.computeIfAbsent(world, k -> new ConcurrentHashMap<>());
-                Map<Long, List<DynamicLightSource>> lightPositions = INSTANCE.worldLightPositions.computeIfAbsent(world, k -> new ConcurrentHashMap<>());
-
-                Map<Integer, Integer> seenLightLevels = new HashMap<>();
-                Map<Integer, double[]> seenPos = new HashMap<>();
-
-                // handle player’s wielded item light first
-                int pBlockX = MathHelper.floor_double(player.posX);
-                int pBlockY = MathHelper.floor_double(player.posY);
-                int pBlockZ = MathHelper.floor_double(player.posZ);
-                boolean playerInLava = world.getBlock(pBlockX, pBlockY, pBlockZ).getMaterial() == Material.lava;
-                if (!playerInLava) {
-                    ItemStack held = player.getCurrentEquippedItem();
-                    int level = (held != null) ? ItemsConfigLoader.INSTANCE.getLightLevel(held, world, false, true) : 0;
-                    seenLightLevels.put(player.getEntityId(), level);
-                    seenPos.put(player.getEntityId(), new double[]{player.posX, player.posY, player.posZ});
-                }
-
-                // then handle other entities
-                for (Entity e : entities) {
-                    int blockX = MathHelper.floor_double(e.posX);
-                    int blockY = MathHelper.floor_double(e.posY);
-                    int blockZ = MathHelper.floor_double(e.posZ);
-                    if (world.getBlock(blockX, blockY, blockZ).getMaterial() == Material.lava) continue;
-
-                    int lightLevel = 0;
-                    if (e instanceof EntityItem) {
-                        lightLevel = ItemsConfigLoader.INSTANCE.getLightLevel(((EntityItem) e).getEntityItem(), world, true, false);
-                    } else if (e instanceof EntityPlayer) {
-                        ItemStack heldItem = ((EntityPlayer) e).getCurrentEquippedItem();
-                        if (heldItem != null) {
-                            lightLevel = ItemsConfigLoader.INSTANCE.getLightLevel(heldItem, world, false, true);
-                        }
-                    } else {
-                        lightLevel = EntityConfigLoader.INSTANCE.getLightLevel(e);
-                    }
-
-                    if (lightLevel > 0 || lightMap.containsKey(e.getEntityId())) {
-                        seenLightLevels.put(e.getEntityId(), lightLevel);
-                        seenPos.put(e.getEntityId(), new double[]{e.posX, e.posY, e.posZ});
-                    }
-                }
+                s.inRange[count++] = i;
+            }
+            s.inRangeCount = count;
+            this.outerCount = outer;
+            return count;
+        }
+    }
 
-                Set<Integer> currentKeys = new HashSet<>(lightMap.keySet());
-                for (Integer id : currentKeys) {
-                    if (!seenLightLevels.containsKey(id)) {
-                        DynamicLightSource source = lightMap.get(id);
-                        if (source != null) {
-                            source.targetLevel = 0;
-                        }
-                    }
-                }
+    // entities seen by the last scan, as parallel arrays so a scan doesn't allocate once they're big enough
+    static class SeenEntities {
+        int[] ids = new int[64];
+        int[] levels = new int[64];
+        double[] xs = new double[64];
+        double[] ys = new double[64];
+        double[] zs = new double[64];
+        int[] itemIds = new int[64]; // held or dropped (-1 = none), only for traces
+        int[] itemDamages = new int[64]; // same
+        boolean[] burning = new boolean[64]; // same
+        int size;
+        double originX, originY, originZ; // where the player was when scanned, for LightLod
+
+        void setOrigin(double x, double y, double z) {
+            originX = x;
+            originY = y;
+            originZ = z;
+        }
 
-                // update sources for seen entities
-                for (Map.Entry<Integer, Integer> entry : seenLightLevels.entrySet()) {
-                    int id = entry.getKey();
-                    int level = entry.getValue();
-                    double[] p = seenPos.get(id);
-                    updateLightSource(world, id, p[0], p[1], p[2], level, lightMap, lightPositions);
-                }
+        void add(int id, int level, double x, double y, double z, int itemId, int itemDamage, boolean isBurning) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                levels = Arrays.copyOf(levels, capacity);
+                xs = Arrays.copyOf(xs, capacity);
+                ys = Arrays.copyOf(ys, capacity);
+                zs = Arrays.copyOf(zs, capacity);
+                itemIds = Arrays.copyOf(itemIds, capacity);
+                itemDamages = Arrays.copyOf(itemDamages, capacity);
+                burning = Arrays.copyOf(burning, capacity);
+            }
+            ids[size] = id;
+            levels[size] = level;
+            xs[size] = x;
+            ys[size] = y;
+            zs[size] = z;
+            itemIds[size] = itemId;
+            itemDamages[size] = itemDamage;
+            burning[size] = isBurning;
+            size++;
+        }
 
-                // transfer check for sources that need to increase light level
-                //TODO: this may be optimizable
-                for (Map.Entry<Integer, Integer> entry : seenLightLevels.entrySet()) {
-                    int id = entry.getKey();
-                    DynamicLightSource source = lightMap.get(id);
-                    if (source != null && source.level < source.targetLevel) {
-                        long pos = packPosition(source.x, source.y, source.z);
-                        int[] coord = unpackPosition(pos);
-                        int maxFading = 0;
-                        for (int dx = -1; dx <= 1; dx++) {
-                            for (int dy = -1; dy <= 1; dy++) {
-                                for (int dz = -1; dz <= 1; dz++) {
-                                    long neighborPos = packPosition(coord[0] + dx, coord[1] + dy, coord[2] + dz);
-                                    List<DynamicLightSource> list = lightPositions.get(neighborPos);
-                                    if (list != null) {
-                                        for (DynamicLightSource s : list) {
-                                            if (s.targetLevel <= 0 && s.level > 0) {
-                                                maxFading = Math.max(maxFading, s.level);
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                        if (maxFading > source.level) {
-                            source.level = maxFading;
-                            INSTANCE.updateMaxAndQueue(world, pos, lightPositions);
-                        }
-                    }
-                }
-            });
+        void clear() {
+            size = 0;
         }
     }
 
     /* update/create light source for an entity */
-    private static void updateLightSource(World world, int entityId, double x, double y, double z, int level, Map<Integer, DynamicLightSource> lightMap, Map<Long, List<DynamicLightSource>> lightPositions) {
-        int bx = MathHelper.floor_double(x);
-        int by = MathHelper.floor_double(y);
-        int bz = MathHelper.floor_double(z);
-
+    private void updateLightSource(int entityId, double x, double y, double z, int level, int lod, int stamp, long worldTime, int playerId, WorldLightData data) {
+        IntObjectHashMap<DynamicLightSource> lightMap = data.lightMap;
+        LightSourceIndex lightIndex = data.index;
         DynamicLightSource source = lightMap.get(entityId);
-        long newPos = packPosition(bx, by, bz);
 
-        boolean isPlayer = Minecraft.getMinecraft().thePlayer != null && Minecraft.getMinecraft().thePlayer.getEntityId() == entityId;
-        if (level <= 0 && source == null && !isPlayer) { // skip if no light and no existing source
+        if (level <= 0 && source == null && entityId != playerId) { // skip if no light and no existing source
             return;
         }
 
+        // fast movers get their light where they're about to be (see SourceMotion)
+        double lx = x, ly = y, lz = z;
+        if (source != null && GeneralConfigLoader.INSTANCE.isMovementLookAhead()) {
+            long ticks = worldTime - source.lastSeen;
+            if (SourceMotion.isFast(x - source.seenX, y - source.seenY, z - source.seenZ, ticks)) {
+                lx = SourceMotion.ahead(x, source.seenX, ticks);
+                ly = SourceMotion.ahead(y, source.seenY, ticks);
+                lz = SourceMotion.ahead(z, source.seenZ, ticks);
+            }
+        }
+
+        // stays put until the entity is clearly in another block (or LOD cell), then exact block when near,
+        // a coarser grid farther out (see LightLod)
+        int bx, by, bz;
+        if (source != null && SourceMotion.stays(source.x, source.y, source.z, lx, ly, lz, LightLod.grid(lod))) {
+            bx = source.x;
+            by = source.y;
+            bz = source.z;
+        } else {
+            bx = LightLod.snap(MathHelper.floor_double(lx), lod);
+            by = LightLod.snap(MathHelper.floor_double(ly), lod);
+            bz = LightLod.snap(MathHelper.floor_double(lz), lod);
+        }
+        long newPos = PackedPos.pack(bx, by, bz);
+
         if (source == null) {
-            source = new DynamicLightSource(bx, by, bz, 0);
+            source = new DynamicLightSource(entityId, bx, by, bz, 0);
             source.targetLevel = level;
             lightMap.put(entityId, source);
+            lightIndex.add(source);
 
-            List<DynamicLightSource> list = lightPositions.computeIfAbsent(newPos, k -> new ArrayList<>());
-            list.add(source);
-
-            INSTANCE.updateMaxAndQueue(world, newPos, lightPositions);
+            updateMaxAndQueue(data, newPos);
         } else {
-            long oldPos = packPosition(source.x, source.y, source.z);
+            long oldPos = PackedPos.pack(source.x, source.y, source.z);
 
             if (oldPos != newPos) { // entity moved, update position
-                List<DynamicLightSource> oldList = lightPositions.get(oldPos);
-                if (oldList != null) {
-                    oldList.remove(source);
-                    if (oldList.isEmpty()) lightPositions.remove(oldPos);
-                }
-                INSTANCE.updateMaxAndQueue(world, oldPos, lightPositions);
+                lightIndex.remove(source); // indexed by its old position
+                updateMaxAndQueue(data, oldPos);
                 source.x = bx;
                 source.y = by;
                 source.z = bz;
-                List<DynamicLightSource> newList = lightPositions.computeIfAbsent(newPos, k -> new ArrayList<>());
-                newList.add(source);
-                INSTANCE.updateMaxAndQueue(world, newPos, lightPositions);
+                lightIndex.add(source);
+                updateMaxAndQueue(data, newPos);
             }
 
             if (source.targetLevel != level) {
@@ -513,7 +808,34 @@ public enum ClientDynamicLightHandler {
             }
         }
 
-        source.lastSeen = world.getTotalWorldTime();
+        source.lod = lod;
+        source.seenX = x;
+        source.seenY = y;
+        source.seenZ = z;
+        source.lastSeen = worldTime;
+        source.seenStamp = stamp;
+    }
+
+    /* live stats in the F3 text area */
+    @SubscribeEvent
+    public void onRenderOverlayText(RenderGameOverlayEvent.Text event) {
+        if (dynamicLightEnabled && stats.isVisible()) {
+            stats.addLines(event.left);
+        }
+    }
+
+    public void toggleStatsOverlay() {
+        stats.toggle();
+    }
+
+    /* starts/stops recording a light trace (see TraceRecorder), tells the player where it goes */
+    public void toggleTraceRecording() {
+        File file = recorder.toggle();
+        EntityPlayer player = Minecraft.getMinecraft().thePlayer;
+        if (player != null && file != null) {
+            String state = recorder.isRecording() ? "Recording light trace to " : "Light trace saved to ";
+            player.addChatMessage(new ChatComponentText("[Client Dynamic Light] " + state + file.getName()));
+        }
     }
 
     // getter for config
@@ -0,0 +1,43 @@
+package com.awesomehippo.clientdynamiclight;
+
+// holds the info for a light source
+class DynamicLightSource {
+    final int entityId;
+    int x, y, z;
+    int level;
+    int targetLevel;
+    long lastSeen;
+    int seenStamp; // scan that last saw the entity
+    int lod; // LightLod tier at the last scan
+    double seenX, seenY, seenZ; // entity position at the last scan, for its speed (SourceMotion)
+
+    DynamicLightSource(int entityId, int x, int y, int z, int level) {
+        this.entityId = entityId;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.level = level;
+        this.targetLevel = level;
+        this.lastSeen = 0;
+    }
+
+    // for smoother transition
+    public boolean tickUpdateLevel() {
+        return tickUpdateLevel(1);
+    }
+
+    // same, up to `step` levels at once (far sources step less often)
+    boolean tickUpdateLevel(int step) {
+        if (level == targetLevel) {
+            return false;
+        }
+        if (level < targetLevel) level = Math.min(targetLevel, level + step);
+        else level = Math.max(targetLevel, level - step);
+
+        return true;
+    }
+
+    boolean isFading() {
+        return targetLevel <= 0 && level > 0;
+    }
+}
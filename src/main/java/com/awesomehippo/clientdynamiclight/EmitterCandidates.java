@@ -0,0 +1,109 @@
+package com.awesomehippo.clientdynamiclight;
+
+import com.awesomehippo.clientdynamiclight.config.EntityConfigLoader;
+import com.awesomehippo.clientdynamiclight.util.IntObjectHashMap;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.item.EntityItem;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.MathHelper;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+
+import java.util.List;
+
+/*
+ * Entities of the client world that could emit light with the current config ("potential emitters").
+ * Kept up to date from entity join / chunk load / chunk unload events, so the scanner doesn't have to sweep
+ * every chunk's entity list with getEntitiesWithinAABB each tick. Dead entities are pruned lazily while scanning.
+ *
+ * Client thread only.
+ */
+final class EmitterCandidates {
+
+    private final IntObjectHashMap<Entity> entities = new IntObjectHashMap<>();
+    private World world;
+    private int configRevision = -1;
+
+    /* binds the set to a world, rebuilding it from the loaded entities if the world or the config changed */
+    void sync(World world) {
+        int revision = EntityConfigLoader.INSTANCE.getRevision();
+        if (world == this.world && revision == configRevision) {
+            return;
+        }
+        this.world = world;
+        this.configRevision = revision;
+        entities.clear();
+
+        if (world == null) return;
+        List<?> loaded = world.loadedEntityList;
+        for (int i = 0; i < loaded.size(); i++) {
+            offer((Entity) loaded.get(i));
+        }
+    }
+
+    void offer(Entity e) {
+        if (e == null || e.isDead || e.worldObj != world) return;
+        if (accepts(e)) {
+            entities.put(e.getEntityId(), e);
+        }
+    }
+
+    void remove(Entity e) {
+        if (entities.get(e.getEntityId()) == e) {
+            entities.remove(e.getEntityId());
+        }
+    }
+
+    void onChunkLoad(Chunk chunk) {
+        if (chunk.worldObj != world) return;
+        for (List<?> list : chunk.entityLists) {
+            for (int i = 0; i < list.size(); i++) {
+                offer((Entity) list.get(i));
+            }
+        }
+    }
+
+    void onChunkUnload(Chunk chunk) {
+        if (chunk.worldObj != world) return;
+        for (List<?> list : chunk.entityLists) {
+            for (int i = 0; i < list.size(); i++) {
+                remove((Entity) list.get(i));
+            }
+        }
+    }
+
+    /*
+     * copies the live candidates of the sectors due this scan into the snapshot (`due` null = all of them),
+     * dropping the ones that died or left the world
+     */
+    void collect(EntitySnapshot out, ScanSlicer.DueSectors due) {
+        for (int i = entities.size() - 1; i >= 0; i--) {
+            Entity e = entities.valueAt(i);
+            if (e.isDead || e.worldObj != world) {
+                entities.removeAt(i);
+                continue;
+            }
+            if (due != null && !due.contains(MathHelper.floor_double(e.posX), MathHelper.floor_double(e.posZ))) {
+                continue;
+            }
+            out.add(e);
+        }
+    }
+
+    int size() {
+        return entities.size();
+    }
+
+    void clear() {
+        entities.clear();
+        world = null;
+    }
+
+    // items (dropped or held) are always candidates since the stack can change, the rest depends on the entity config
+    private static boolean accepts(Entity e) {
+        if (e instanceof EntityItem || e instanceof EntityPlayer) {
+            return true;
+        }
+        return EntityConfigLoader.INSTANCE.mayEmitLight(e);
+    }
+}
@@ -0,0 +1,123 @@
+package com.awesomehippo.clientdynamiclight;
+
+import com.awesomehippo.clientdynamiclight.config.EntityConfigLoader;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.item.EntityItem;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+
+import java.util.Arrays;
+
+/*
+ * What a scan needs of the candidate entities and the player, copied on the client thread into parallel arrays.
+ * The worker and the classify pool only read this, never a live Entity (whose fields the client thread keeps
+ * writing), and the result is applied from it too, so every step of a scan sees the same positions.
+ *
+ * Each ScannerRunnable owns one, filled once per tick and reused with the scan once it was applied or dropped,
+ * arrays only grow.
+ * Entries in [0, size), the worker then writes the in-range entries to `inRange` and their light to `levels`.
+ */
+final class EntitySnapshot {
+
+    static final byte KIND_ENTITY = 0; // light from the entity rules
+    static final byte KIND_DROPPED = 1; // dropped item stack
+    static final byte KIND_PLAYER = 2; // held item of another player
+
+    // player, its held item is a light like the others
+    int playerId;
+    double playerX, playerY, playerZ;
+    int playerItemId, playerItemDamage;
+    boolean playerBurning;
+    int dimension;
+
+    int size;
+    int[] ids = new int[64];
+    double[] xs = new double[64];
+    double[] ys = new double[64];
+    double[] zs = new double[64];
+    byte[] kinds = new byte[64];
+    int[] itemIds = new int[64]; // -1 = no item, KIND_DROPPED/KIND_PLAYER only
+    int[] itemDamages = new int[64];
+    int[] states = new int[64]; // EntityConfigLoader.stateOf(), burning bit for every kind
+    Class<?>[] types = new Class<?>[64]; // KIND_ENTITY only, what the rules are resolved from
+
+    // written by the worker
+    int[] inRange = new int[64]; // indices of the entries within range (and in a sector due this scan)
+    int inRangeCount;
+    int[] levels = new int[64]; // by index into inRange
+    int[] misses = new int[64]; // indices into inRange the LightLevelMemo had nothing for
+    int missCount;
+    int playerLevel;
+
+    void begin(EntityPlayer player) {
+        size = 0;
+        inRangeCount = 0;
+        missCount = 0;
+        playerId = player.getEntityId();
+        playerX = player.posX;
+        playerY = player.posY;
+        playerZ = player.posZ;
+        ItemStack held = player.getCurrentEquippedItem();
+        playerItemId = itemId(held);
+        playerItemDamage = held != null ? held.getItemDamage() : 0;
+        playerBurning = player.isBurning();
+        dimension = player.worldObj != null ? player.worldObj.provider.dimensionId : 0;
+    }
+
+    void add(Entity e) {
+        if (size == ids.length) grow(size * 2);
+        int i = size++;
+        ids[i] = e.getEntityId();
+        xs[i] = e.posX;
+        ys[i] = e.posY;
+        zs[i] = e.posZ;
+
+        ItemStack stack = null;
+        if (e instanceof EntityItem) {
+            kinds[i] = KIND_DROPPED;
+            stack = ((EntityItem) e).getEntityItem();
+        } else if (e instanceof EntityPlayer) {
+            kinds[i] = KIND_PLAYER;
+            stack = ((EntityPlayer) e).getCurrentEquippedItem();
+        } else {
+            kinds[i] = KIND_ENTITY;
+        }
+
+        if (kinds[i] == KIND_ENTITY) {
+            types[i] = e.getClass();
+            states[i] = EntityConfigLoader.stateOf(e);
+            itemIds[i] = -1;
+            itemDamages[i] = 0;
+        } else {
+            types[i] = null;
+            states[i] = e.isBurning() ? EntityConfigLoader.STATE_BURNING : 0;
+            itemIds[i] = itemId(stack);
+            itemDamages[i] = stack != null ? stack.getItemDamage() : 0;
+        }
+    }
+
+    boolean isBurning(int i) {
+        return (states[i] & EntityConfigLoader.STATE_BURNING) != 0;
+    }
+
+    private static int itemId(ItemStack stack) {
+        Item item = stack != null ? stack.getItem() : null;
+        return item != null ? Item.getIdFromItem(item) : -1;
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        zs = Arrays.copyOf(zs, capacity);
+        kinds = Arrays.copyOf(kinds, capacity);
+        itemIds = Arrays.copyOf(itemIds, capacity);
+        itemDamages = Arrays.copyOf(itemDamages, capacity);
+        states = Arrays.copyOf(states, capacity);
+        types = Arrays.copyOf(types, capacity);
+        inRange = new int[capacity];
+        levels = new int[capacity];
+        misses = new int[capacity];
+    }
+}
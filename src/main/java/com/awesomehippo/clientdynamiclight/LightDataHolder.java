@@ -0,0 +1,14 @@
+package com.awesomehippo.clientdynamiclight;
+
+/*
+ * Added to World and ChunkCache by the transformer, so the hooks get the light data of a world with a field read
+ * instead of map lookups. A World stores its own data, a ChunkCache forwards to the world it was built from.
+ */
+public interface LightDataHolder {
+
+    // null until a dynamic light was placed in that world (always null for server worlds)
+    WorldLightData getDynamicLightData();
+
+    // no-op on a ChunkCache
+    void setDynamicLightData(WorldLightData data);
+}
@@ -0,0 +1,140 @@
+package com.awesomehippo.clientdynamiclight;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Java Flight Recorder events (category "Client Dynamic Light"), so a player can send a .jfr instead of a
+ * "it lags near my farm". Start a recording as usual (-XX:StartFlightRecording, jcmd or JMC) and they show up
+ * next to GC and the rest.
+ *
+ * 1.7.10 runs on Java 8 where JFR may not exist, and we build against the Java 8 API, so the events are made
+ * with jdk.jfr.EventFactory through reflection. Without JFR every call is a no-op. While nothing records them,
+ * emit() costs an EventType.isEnabled() call, no event object is made.
+ *
+ * Every event has the time the phase took ("elapsed", the built-in duration is 0 since it is measured
+ * before the event is made) and two counts.
+ */
+final class LightEvents {
+
+    static final int SCAN = 0; // worker classify: candidates, in range
+    static final int FADE_TICK = 1; // level stepping/cleanup: sources, queued
+    static final int QUEUE_DRAIN = 2; // render queue drain: drained, still pending
+    static final int RELIGHT_BATCH = 3; // relight of the drained positions: positions, relights
+
+    private static final String[][] TYPES = {
+            // name, label, count names
+            {"Scan", "Entity Scan", "candidates", "inRange"},
+            {"FadeTick", "Fade Tick", "sources", "queued"},
+            {"QueueDrain", "Queue Drain", "drained", "pending"},
+            {"RelightBatch", "Relight Batch", "positions", "relights"},
+    };
+
+    private static final Jfr JFR = Jfr.create();
+
+    private LightEvents() {
+    }
+
+    static boolean isAvailable() {
+        return JFR != null;
+    }
+
+    static void emit(int type, long durationNanos, int first, int second) {
+        if (JFR != null) {
+            JFR.emit(type, durationNanos, first, second);
+        }
+    }
+
+    private static final class Jfr {
+        private final Object[] factories;
+        private final Object[] eventTypes; // EventFactory.getEventType(), one per factory
+        private final MethodHandle isEnabled; // EventType.isEnabled(): enabled in a running recording
+        private final MethodHandle newEvent; // EventFactory.newEvent()
+        private final MethodHandle set; // Event.set(int, Object)
+        private final MethodHandle shouldCommit;
+        private final MethodHandle commit;
+
+        private Jfr(Object[] factories, Object[] eventTypes, MethodHandle isEnabled, MethodHandle newEvent,
+                    MethodHandle set, MethodHandle shouldCommit, MethodHandle commit) {
+            this.factories = factories;
+            this.eventTypes = eventTypes;
+            this.isEnabled = isEnabled;
+            this.newEvent = newEvent;
+            this.set = set;
+            this.shouldCommit = shouldCommit;
+            this.commit = commit;
+        }
+
+        static Jfr create() {
+            try {
+                Class<?> event = Class.forName("jdk.jfr.Event");
+                Class<?> factory = Class.forName("jdk.jfr.EventFactory");
+                Class<?> annotation = Class.forName("jdk.jfr.AnnotationElement");
+                Class<?> value = Class.forName("jdk.jfr.ValueDescriptor");
+                Class<?> eventType = Class.forName("jdk.jfr.EventType");
+                Constructor<?> newAnnotation = annotation.getConstructor(Class.class, Object.class);
+                Constructor<?> newValue = value.getConstructor(Class.class, String.class, List.class);
+                MethodHandle create = MethodHandles.publicLookup().findStatic(factory, "create",
+                        MethodType.methodType(factory, List.class, List.class));
+
+                Object[] factories = new Object[TYPES.length];
+                for (int i = 0; i < TYPES.length; i++) {
+                    String[] type = TYPES[i];
+                    List<Object> annotations = Arrays.asList(
+                            newAnnotation.newInstance(jfrAnnotation("Name"), "clientdynamiclight." + type[0]),
+                            newAnnotation.newInstance(jfrAnnotation("Label"), type[1]),
+                            newAnnotation.newInstance(jfrAnnotation("Category"), new String[]{"Client Dynamic Light"}),
+                            newAnnotation.newInstance(jfrAnnotation("StackTrace"), false)); // always the same, not worth the cost
+                    List<Object> fields = new ArrayList<>();
+                    fields.add(newValue.newInstance(long.class, "elapsed", Collections.singletonList(
+                            newAnnotation.newInstance(jfrAnnotation("Timespan"), "NANOSECONDS"))));
+                    fields.add(newValue.newInstance(int.class, type[2], Collections.emptyList()));
+                    fields.add(newValue.newInstance(int.class, type[3], Collections.emptyList()));
+                    factories[i] = create.invoke(annotations, fields);
+                }
+
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                MethodHandle getEventType = lookup.findVirtual(factory, "getEventType", MethodType.methodType(eventType));
+                Object[] eventTypes = new Object[factories.length];
+                for (int i = 0; i < factories.length; i++) {
+                    eventTypes[i] = getEventType.invoke(factories[i]);
+                }
+                return new Jfr(factories, eventTypes,
+                        lookup.findVirtual(eventType, "isEnabled", MethodType.methodType(boolean.class)).asType(MethodType.methodType(boolean.class, Object.class)),
+                        lookup.findVirtual(factory, "newEvent", MethodType.methodType(event)).asType(MethodType.methodType(Object.class, Object.class)),
+                        lookup.findVirtual(event, "set", MethodType.methodType(void.class, int.class, Object.class)).asType(MethodType.methodType(void.class, Object.class, int.class, Object.class)),
+                        lookup.findVirtual(event, "shouldCommit", MethodType.methodType(boolean.class)).asType(MethodType.methodType(boolean.class, Object.class)),
+                        lookup.findVirtual(event, "commit", MethodType.methodType(void.class)).asType(MethodType.methodType(void.class, Object.class)));
+            } catch (ClassNotFoundException e) {
+                return null; // no JFR in this JVM
+            } catch (Throwable t) {
+                System.err.println("[ClientDynamicLight] Could not set up JFR events: " + t);
+                return null;
+            }
+        }
+
+        private static Class<?> jfrAnnotation(String name) throws ClassNotFoundException {
+            return Class.forName("jdk.jfr." + name);
+        }
+
+        void emit(int type, long durationNanos, int first, int second) {
+            try {
+                if (!(boolean) isEnabled.invokeExact(eventTypes[type])) return; // no recording wants it
+                Object event = newEvent.invokeExact(factories[type]);
+                if (!(boolean) shouldCommit.invokeExact(event)) return;
+                set.invokeExact(event, 0, (Object) durationNanos);
+                set.invokeExact(event, 1, (Object) first);
+                set.invokeExact(event, 2, (Object) second);
+                commit.invokeExact(event);
+            } catch (Throwable t) {
+                // never let diagnostics break the game
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.awesomehippo.clientdynamiclight;
+
+import com.awesomehippo.clientdynamiclight.config.EntityConfigLoader;
+import com.awesomehippo.clientdynamiclight.config.ItemsConfigLoader;
+import com.awesomehippo.clientdynamiclight.util.IntObjectHashMap;
+
+/*
+ * Last light level worked out for each entity, with the snapshot inputs it was worked out from:
+ * the item id and damage of the held/dropped stack, or the class and burning/alive/charged state for other
+ * entities. The config loaders only run again when one of those changed (or the config or dimension did).
+ *
+ * A level only depends on those inputs, so an entry can't go wrong when an id is reused, it just misses.
+ *
+ * Scan worker only (there's one), ParallelClassifier looks entries up before classifying the misses.
+ */
+final class LightLevelMemo {
+
+    static final int MISS = -1;
+
+    private static final int EVICT_AFTER = 64; // scans an entry can go unused before it's dropped
+
+    private final IntObjectHashMap<Entry> entries = new IntObjectHashMap<>(); // by entity id
+    private int dimension = Integer.MIN_VALUE;
+    private int itemsRevision = -1;
+    private int entitiesRevision = -1;
+    private int scan;
+
+    /* call once per scan, forgets everything if the dimension or the config changed */
+    void begin(int dimension) {
+        int items = ItemsConfigLoader.INSTANCE.getRevision();
+        int entities = EntityConfigLoader.INSTANCE.getRevision();
+        if (dimension != this.dimension || items != itemsRevision || entities != entitiesRevision) {
+            entries.clear();
+            this.dimension = dimension;
+            this.itemsRevision = items;
+            this.entitiesRevision = entities;
+        }
+
+        // entities that left (or are in sectors we don't scan much), they'd just be recomputed
+        if ((++scan & (EVICT_AFTER - 1)) == 0) {
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                if (scan - entries.valueAt(i).scan > EVICT_AFTER) {
+                    entries.removeAt(i);
+                }
+            }
+        }
+    }
+
+    /* level remembered for entry `i` of the snapshot, MISS if it's new or its inputs changed since */
+    int lookup(EntitySnapshot s, int i) {
+        Entry entry = entries.get(s.ids[i]);
+        if (entry == null || !entry.sameInputs(s, i)) {
+            return MISS;
+        }
+        entry.scan = scan;
+        return entry.level;
+    }
+
+    void store(EntitySnapshot s, int i, int level) {
+        Entry entry = entries.get(s.ids[i]);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(s.ids[i], entry);
+        }
+        entry.kind = s.kinds[i];
+        entry.type = s.types[i];
+        entry.itemId = s.itemIds[i];
+        entry.damage = s.itemDamages[i];
+        entry.state = s.states[i];
+        entry.level = level;
+        entry.scan = scan;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    void clear() {
+        entries.clear();
+        dimension = Integer.MIN_VALUE;
+    }
+
+    private static final class Entry {
+        byte kind;
+        Class<?> type;
+        int itemId;
+        int damage;
+        int state;
+        int level;
+        int scan;
+
+        // only what the rules of that kind look at, a dropped item catching fire is still the same light
+        boolean sameInputs(EntitySnapshot s, int i) {
+            if (kind != s.kinds[i]) return false;
+            if (kind == EntitySnapshot.KIND_ENTITY) {
+                return type == s.types[i] && state == s.states[i];
+            }
+            return itemId == s.itemIds[i] && damage == s.itemDamages[i];
+        }
+    }
+}
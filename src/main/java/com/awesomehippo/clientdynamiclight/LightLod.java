@@ -0,0 +1,47 @@
+package com.awesomehippo.clientdynamiclight;
+
+/*
+ * Level of detail of a light source, from its distance to the player when it was scanned.
+ * Near sources sit on their exact block and fade one level per tick. Farther out a source stays put until the
+ * entity leaves the source's cell on a coarser grid, then snaps to the middle of the new cell, so it moves
+ * (two relights) a lot less often. It also fades a few levels at once every few ticks: as fast as a near one,
+ * with fewer relights. Nobody can tell where exactly a torch 50 blocks away is lighting from.
+ *
+ * Rescanning is already sparser with distance, see ScanSlicer (chunk rings around the player).
+ */
+final class LightLod {
+
+    static final int NEAR = 0;
+    static final int MID = 1;
+    static final int FAR = 2;
+
+    private static final double MID_DISTANCE = 24; // blocks
+    private static final double FAR_DISTANCE = 40;
+    private static final int[] GRID = {1, 2, 4}; // blocks per cell, by tier
+    private static final int[] FADE_PERIOD = {1, 2, 4}; // ticks between level steps, and levels per step, by tier
+
+    private LightLod() {
+    }
+
+    static int tierOf(double distanceSq) {
+        if (distanceSq < MID_DISTANCE * MID_DISTANCE) return NEAR;
+        return distanceSq < FAR_DISTANCE * FAR_DISTANCE ? MID : FAR;
+    }
+
+    /* block coordinate a source moving to `block` goes to, the middle of its cell past NEAR */
+    static int snap(int block, int tier) {
+        int grid = GRID[tier];
+        return grid == 1 ? block : Math.floorDiv(block, grid) * grid + grid / 2;
+    }
+
+    /* blocks per cell: 1 NEAR, 2 MID, 4 FAR. A source stays while the entity is in its cell, see SourceMotion.stays() */
+    static int grid(int tier) {
+        return GRID[tier];
+    }
+
+    /* levels the source may step this tick (0 = not its turn), spread over sources so they don't all step together */
+    static int fadeStep(int tier, long worldTime, int entityId) {
+        int period = FADE_PERIOD[tier];
+        return period == 1 || Math.floorMod(worldTime + entityId, (long) period) == 0 ? period : 0;
+    }
+}
@@ -0,0 +1,175 @@
+package com.awesomehippo.clientdynamiclight;
+
+import com.awesomehippo.clientdynamiclight.util.LongByteHashMap;
+import com.awesomehippo.clientdynamiclight.util.LongObjectHashMap;
+import com.awesomehippo.clientdynamiclight.util.SectionMask;
+import net.minecraft.world.World;
+
+import java.util.Arrays;
+
+/*
+ * Overlay lighting mode: dynamic light is never written into the world. The patched brightness lookups
+ * (World/ChunkCache.getLightBrightnessForSkyBlocks) max the block light with what our sources give at that block,
+ * and a source change only marks the render sections around it, no relight at all.
+ *
+ * Light is the source level minus the manhattan distance, without occlusion: cheap enough for a lookup but it can
+ * bleed through thin walls. It's worked out a whole section at a time and kept until a source around it changes,
+ * so a lookup is a mask test, one hash lookup and a nibble read.
+ *
+ * Client thread only (the lookups run on it too).
+ */
+final class LightOverlay {
+
+    private static final int REACH = 14; // a level 15 source still gives 1 at 14 blocks
+    private static final byte[] UNLIT = new byte[0]; // cached for the sections no source reaches
+    private static final int MAX_SPARE = 256; // dropped arrays kept for reuse, 512k at most
+
+    final World world;
+    private final LightSourceIndex index;
+
+    // sections within reach of at least one source, rebuilt from the index when it changed
+    private final SectionMask influence = new SectionMask();
+    private boolean influenceDirty;
+
+    // falloff levels by section key, 4096 nibbles each (see LightSourceIndex.falloffLevels), filled on first use
+    // after a change, dropped by markChanged for every section the change reaches
+    private final LongObjectHashMap<byte[]> levels = new LongObjectHashMap<>();
+    private byte[][] spare = new byte[16][]; // dropped arrays, reused
+    private int spareCount;
+
+    // sections to re-render at the next flush
+    private final LongByteHashMap dirtySections = new LongByteHashMap(); // used as a set
+    private long[] dirtyList = new long[64];
+    private int dirtyCount;
+
+    LightOverlay(World world, LightSourceIndex index) {
+        this.world = world;
+        this.index = index;
+    }
+
+    /* dynamic block light at x/y/z, almost always a single bit test, else a single lookup */
+    int levelAt(int x, int y, int z) {
+        if (y < 0 || y > 255 || !influence.mayContain(x, y, z)) return 0;
+        byte[] section = levels(LightSourceIndex.sectionKey(x >> 4, y >> 4, z >> 4));
+        if (section == UNLIT) return 0;
+        int b = (y & 15) << 8 | (z & 15) << 4 | (x & 15);
+        return section[b >> 1] >> ((b & 1) << 2) & 15;
+    }
+
+    // cached levels of a section, worked out from the index if a change dropped them
+    private byte[] levels(long key) {
+        byte[] section = levels.get(key);
+        if (section == null) {
+            section = spareCount > 0 ? spare[--spareCount] : new byte[2048];
+            if (!index.falloffLevels(LightSourceIndex.sectionX(key), LightSourceIndex.sectionY(key),
+                    LightSourceIndex.sectionZ(key), section)) {
+                recycle(section);
+                section = UNLIT;
+            }
+            levels.put(key, section);
+        }
+        return section;
+    }
+
+    private void recycle(byte[] section) {
+        if (section == null || section == UNLIT || spareCount == MAX_SPARE) return;
+        if (spareCount == spare.length) {
+            spare = Arrays.copyOf(spare, spareCount * 2);
+        }
+        spare[spareCount++] = section;
+    }
+
+    private void dropLevels() {
+        for (int i = 0; i < levels.size(); i++) {
+            recycle(levels.valueAt(i));
+        }
+        levels.clear();
+    }
+
+    /* a source appeared/left/changed at x/y/z, everything it could light has to be re-rendered */
+    void markChanged(int x, int y, int z) {
+        influenceDirty = true;
+        int minSy = Math.max(0, (y - REACH) >> 4), maxSy = Math.min(15, (y + REACH) >> 4);
+        for (int sx = (x - REACH) >> 4; sx <= (x + REACH) >> 4; sx++) {
+            for (int sy = minSy; sy <= maxSy; sy++) {
+                for (int sz = (z - REACH) >> 4; sz <= (z + REACH) >> 4; sz++) {
+                    long key = LightSourceIndex.sectionKey(sx, sy, sz);
+                    recycle(levels.remove(key)); // even if already dirty, a lookup may have filled it since
+                    if (dirtySections.put(key, 1) != 0) continue;
+                    if (dirtyCount == dirtyList.length) {
+                        dirtyList = Arrays.copyOf(dirtyList, dirtyCount * 2);
+                    }
+                    dirtyList[dirtyCount++] = key;
+                }
+            }
+        }
+    }
+
+    /* the index lost sources without a re-render (unloaded chunk) */
+    void invalidate() {
+        influenceDirty = true;
+        dropLevels();
+    }
+
+    /*
+     * once per tick: catch up the influence mask and mark the dirty sections for a re-render. Only `maxOffscreen`
+     * sections outside the view are marked, the others stay dirty for the next flushes (`view` null = all visible)
+     */
+    void flush(ViewCone view, int maxOffscreen) {
+        if (influenceDirty) {
+            rebuildInfluence();
+        }
+        int kept = 0;
+        for (int i = 0; i < dirtyCount; i++) {
+            long key = dirtyList[i];
+            int x = LightSourceIndex.sectionX(key) << 4;
+            int y = LightSourceIndex.sectionY(key) << 4;
+            int z = LightSourceIndex.sectionZ(key) << 4;
+            if (!ViewCone.isVisible(view, x + 8, y + 8, z + 8)) {
+                if (maxOffscreen == 0) {
+                    dirtyList[kept++] = key;
+                    continue;
+                }
+                maxOffscreen--;
+            }
+            levels(key); // ready before the re-render looks them up
+            // vanilla grows the range by 1 block on every side, stay inside so only this render chunk is marked
+            world.markBlockRangeForRenderUpdate(x + 1, y + 1, z + 1, x + 14, y + 14, z + 14);
+            dirtySections.remove(key);
+        }
+        dirtyCount = kept;
+    }
+
+    void clear() {
+        influence.clear();
+        influenceDirty = false;
+        dirtyCount = 0;
+        dirtySections.clear();
+        dropLevels();
+    }
+
+    // every section around a section holding sources, REACH < 16 so the 3x3x3 around it is enough
+    private void rebuildInfluence() {
+        influence.clear();
+        for (int i = 0; i < index.sectionCount(); i++) {
+            LightSourceIndex.Section section = index.sectionAt(i);
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dz = -1; dz <= 1; dz++) {
+                        influence.add((section.sx + dx) << 4, (section.sy + dy) << 4, (section.sz + dz) << 4);
+                    }
+                }
+            }
+        }
+        influenceDirty = false;
+
+        // forget the levels of the sections nothing reaches anymore
+        for (int i = levels.size() - 1; i >= 0; i--) {
+            long key = levels.keyAt(i);
+            if (!influence.mayContain(LightSourceIndex.sectionX(key) << 4, LightSourceIndex.sectionY(key) << 4,
+                    LightSourceIndex.sectionZ(key) << 4)) {
+                recycle(levels.removeAt(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.awesomehippo.clientdynamiclight;
+
+import java.util.Arrays;
+
+/*
+ * Incremental block light propagation for our dynamic light changes, replaces one vanilla updateLightByType
+ * (a generic flood) per queued position.
+ *
+ * Follows the exact rules of vanilla World.computeLightValue/updateLightByType for EnumSkyBlock.Block, so the
+ * end result is the same light, but:
+ *  - every seed of a region goes through ONE decrease pass and then ONE increase pass
+ *  - both passes run over primitive int queues that are reused between batches
+ *
+ * Queue entries are region relative: 8 bits x, 8 bits y, 8 bits z, 4 bits level. Light never travels more than
+ * 15 blocks, so a 64 blocks region plus the spread of both passes fits easily.
+ *
+ * Client thread only.
+ */
+final class LightPropagator {
+
+    static final int REGION_SHIFT = 6; // seeds are propagated per 64x64 column region
+    private static final int OFFSET = 64; // local x/z = world - region origin + OFFSET
+    private static final int SEED_AREA_RADIUS = 17; // same chunk check as vanilla
+
+    private static final int[] DX = {0, 0, 0, 0, -1, 1};
+    private static final int[] DY = {-1, 1, 0, 0, 0, 0};
+    private static final int[] DZ = {0, 0, -1, 1, 0, 0};
+
+    private int[] decreaseQueue = new int[256];
+    private int decreaseSize;
+    private int[] increaseQueue = new int[1024];
+    private int increaseSize;
+
+    private BlockLightAccess access;
+    private int originX, originZ;
+
+    /* starts a batch for the region holding block x/z */
+    void begin(BlockLightAccess access, int x, int z) {
+        this.access = access;
+        this.originX = (x >> REGION_SHIFT) << REGION_SHIFT;
+        this.originZ = (z >> REGION_SHIFT) << REGION_SHIFT;
+        decreaseSize = 0;
+        increaseSize = 0;
+    }
+
+    /* true if seeding this position would change something, doesn't need begin() (budgets are spent before grouping) */
+    static boolean needsRelight(BlockLightAccess access, int x, int y, int z) {
+        if (y < 0 || y > 255 || !access.isAreaLoaded(x, y, z, SEED_AREA_RADIUS)) {
+            return false;
+        }
+        return computeLight(access, x, y, z) != access.getSavedLight(x, y, z);
+    }
+
+    /* queues a changed position, returns false if its light is already right (nothing to do) */
+    boolean addSeed(int x, int y, int z) {
+        if (y < 0 || y > 255 || !access.isAreaLoaded(x, y, z, SEED_AREA_RADIUS)) {
+            return false;
+        }
+        int saved = access.getSavedLight(x, y, z);
+        int computed = computeLight(access, x, y, z);
+        if (computed > saved) {
+            pushIncrease(x, y, z);
+            return true;
+        }
+        if (computed < saved) {
+            pushDecrease(x, y, z, saved);
+            return true;
+        }
+        return false;
+    }
+
+    /* runs the decrease pass then the increase pass, returns how many light writes it did (never a same value one) */
+    int propagate() {
+        int changed = 0;
+
+        // decrease: clear every block that got its light from the old values (vanilla sets them to 0 too)
+        for (int head = 0; head < decreaseSize; head++) {
+            int entry = decreaseQueue[head];
+            int x = localX(entry), y = localY(entry), z = localZ(entry);
+            int level = entry >>> 24;
+
+            pushIncrease(x, y, z); // every visited block gets recomputed afterwards
+            if (access.getSavedLight(x, y, z) != level) continue;
+
+            access.setLight(x, y, z, 0);
+            changed++;
+
+            for (int f = 0; f < 6; f++) {
+                int nx = x + DX[f], ny = y + DY[f], nz = z + DZ[f];
+                if (ny < 0 || ny > 255) continue;
+                int expected = level - Math.max(1, access.getOpacity(nx, ny, nz));
+                // already dark blocks stay out (vanilla sets them to 0 again, a render update for nothing)
+                if (expected > 0 && access.getSavedLight(nx, ny, nz) == expected) {
+                    pushDecrease(nx, ny, nz, expected);
+                }
+            }
+        }
+        decreaseSize = 0;
+
+        // increase: recompute and spread wherever the light went up
+        for (int head = 0; head < increaseSize; head++) {
+            int entry = increaseQueue[head];
+            int x = localX(entry), y = localY(entry), z = localZ(entry);
+
+            int saved = access.getSavedLight(x, y, z);
+            int computed = computeLight(access, x, y, z);
+            if (computed == saved) continue;
+
+            access.setLight(x, y, z, computed);
+            changed++;
+            if (computed < saved) continue;
+
+            for (int f = 0; f < 6; f++) {
+                int nx = x + DX[f], ny = y + DY[f], nz = z + DZ[f];
+                if (ny < 0 || ny > 255) continue;
+                if (access.getSavedLight(nx, ny, nz) < computed) {
+                    pushIncrease(nx, ny, nz);
+                }
+            }
+        }
+        increaseSize = 0;
+
+        access = null;
+        return changed;
+    }
+
+    // vanilla World.computeLightValue for block light, the emitted light already includes ours
+    private static int computeLight(BlockLightAccess access, int x, int y, int z) {
+        int light = access.getEmittedLight(x, y, z);
+        int opacity = access.getOpacity(x, y, z);
+
+        if (opacity >= 15 && light > 0) opacity = 1;
+        if (opacity < 1) opacity = 1;
+        if (opacity >= 15) return 0;
+        if (light >= 14) return light;
+
+        for (int f = 0; f < 6; f++) {
+            int neighbor = access.getSavedLight(x + DX[f], y + DY[f], z + DZ[f]) - opacity;
+            if (neighbor > light) light = neighbor;
+            if (light >= 14) return light;
+        }
+        return light;
+    }
+
+    private void pushDecrease(int x, int y, int z, int level) {
+        int entry = encode(x, y, z, level);
+        if (entry < 0) return;
+        if (decreaseSize == decreaseQueue.length) {
+            decreaseQueue = Arrays.copyOf(decreaseQueue, decreaseSize * 2);
+        }
+        decreaseQueue[decreaseSize++] = entry;
+    }
+
+    private void pushIncrease(int x, int y, int z) {
+        int entry = encode(x, y, z, 0);
+        if (entry < 0) return;
+        if (increaseSize == increaseQueue.length) {
+            increaseQueue = Arrays.copyOf(increaseQueue, increaseSize * 2);
+        }
+        increaseQueue[increaseSize++] = entry;
+    }
+
+    // -1 if the block is outside what a region can address (can't happen with sane seeds)
+    private int encode(int x, int y, int z, int level) {
+        int lx = x - originX + OFFSET;
+        int lz = z - originZ + OFFSET;
+        if ((lx & ~0xFF) != 0 || (lz & ~0xFF) != 0) return -1;
+        return lx | (y << 8) | (lz << 16) | (level << 24);
+    }
+
+    private int localX(int entry) {
+        return (entry & 0xFF) + originX - OFFSET;
+    }
+
+    private static int localY(int entry) {
+        return (entry >> 8) & 0xFF;
+    }
+
+    private int localZ(int entry) {
+        return ((entry >> 16) & 0xFF) + originZ - OFFSET;
+    }
+}
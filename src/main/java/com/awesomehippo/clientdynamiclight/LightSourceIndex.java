@@ -0,0 +1,285 @@
+package com.awesomehippo.clientdynamiclight;
+
+import com.awesomehippo.clientdynamiclight.util.LongObjectHashMap;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Light sources of a world bucketed by 16x16x16 section, replaces the old Map<Long, List<DynamicLightSource>>.
+ * Every query only walks the sections it overlaps, so the cost follows the local source count and not the
+ * total amount of sources (the old transfer check did 27 hash lookups per source).
+ *
+ * A source is indexed at its current x/y/z, so always remove() it before changing its position.
+ * Client thread only.
+ */
+final class LightSourceIndex {
+
+    private final LongObjectHashMap<Section> sections = new LongObjectHashMap<>();
+    private int sourceCount;
+    // section y range sources were ever added in (until clear()), bounds purgeRegion's lookups
+    private int minSectionY = Integer.MAX_VALUE, maxSectionY = Integer.MIN_VALUE;
+
+    void add(DynamicLightSource source) {
+        long key = sectionKey(source.x >> 4, source.y >> 4, source.z >> 4);
+        Section section = sections.get(key);
+        if (section == null) {
+            section = new Section(source.x >> 4, source.y >> 4, source.z >> 4);
+            sections.put(key, section);
+            minSectionY = Math.min(minSectionY, section.sy);
+            maxSectionY = Math.max(maxSectionY, section.sy);
+        }
+        section.add(source);
+        sourceCount++;
+    }
+
+    boolean remove(DynamicLightSource source) {
+        long key = sectionKey(source.x >> 4, source.y >> 4, source.z >> 4);
+        Section section = sections.get(key);
+        if (section == null || !section.remove(source)) {
+            return false;
+        }
+        if (section.size == 0) {
+            sections.remove(key);
+        }
+        sourceCount--;
+        return true;
+    }
+
+    /* highest current level of the sources sitting exactly at x/y/z */
+    int maxLevelAt(int x, int y, int z) {
+        Section section = sections.get(sectionKey(x >> 4, y >> 4, z >> 4));
+        if (section == null) return 0;
+
+        int max = 0;
+        for (int i = 0; i < section.size; i++) {
+            DynamicLightSource s = section.sources[i];
+            if (s.x == x && s.y == y && s.z == z && s.level > max) {
+                max = s.level;
+            }
+        }
+        return max;
+    }
+
+    /* highest level of the fading sources within `radius` blocks (cube) of x/y/z */
+    int maxFadingLevelAround(int x, int y, int z, int radius) {
+        int max = 0;
+        for (int sx = (x - radius) >> 4; sx <= (x + radius) >> 4; sx++) {
+            for (int sy = (y - radius) >> 4; sy <= (y + radius) >> 4; sy++) {
+                for (int sz = (z - radius) >> 4; sz <= (z + radius) >> 4; sz++) {
+                    Section section = sections.get(sectionKey(sx, sy, sz));
+                    if (section == null) continue;
+
+                    for (int i = 0; i < section.size; i++) {
+                        DynamicLightSource s = section.sources[i];
+                        if (s.isFading() && s.level > max
+                                && Math.abs(s.x - x) <= radius && Math.abs(s.y - y) <= radius && Math.abs(s.z - z) <= radius) {
+                            max = s.level;
+                        }
+                    }
+                }
+            }
+        }
+        return max;
+    }
+
+    /* brightest light reaching x/y/z, source level minus manhattan distance (no occlusion), `reach` < 16 */
+    int maxFalloffLevelAt(int x, int y, int z, int reach) {
+        int max = 0;
+        for (int sx = (x - reach) >> 4; sx <= (x + reach) >> 4; sx++) {
+            for (int sy = (y - reach) >> 4; sy <= (y + reach) >> 4; sy++) {
+                for (int sz = (z - reach) >> 4; sz <= (z + reach) >> 4; sz++) {
+                    Section section = sections.get(sectionKey(sx, sy, sz));
+                    if (section == null) continue;
+
+                    for (int i = 0; i < section.size; i++) {
+                        DynamicLightSource s = section.sources[i];
+                        int level = s.level - Math.abs(s.x - x) - Math.abs(s.y - y) - Math.abs(s.z - z);
+                        if (level > max) max = level;
+                    }
+                }
+            }
+        }
+        return max;
+    }
+
+    /*
+     * maxFalloffLevelAt(.., 14) for every block of section sx/sy/sz at once, as 4096 nibbles (x, then z, then y)
+     * into `out`, each source only walks the blocks it reaches. False if no block of the section is lit
+     */
+    boolean falloffLevels(int sx, int sy, int sz, byte[] out) {
+        Arrays.fill(out, (byte) 0);
+        boolean lit = false;
+        int minX = sx << 4, minY = sy << 4, minZ = sz << 4;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    Section section = sections.get(sectionKey(sx + dx, sy + dy, sz + dz));
+                    if (section == null) continue;
+
+                    for (int i = 0; i < section.size; i++) {
+                        DynamicLightSource s = section.sources[i];
+                        int level = Math.min(s.level, 15);
+                        for (int y = Math.max(minY, s.y - level + 1); y <= Math.min(minY + 15, s.y + level - 1); y++) {
+                            int levelY = level - Math.abs(s.y - y);
+                            for (int z = Math.max(minZ, s.z - levelY + 1); z <= Math.min(minZ + 15, s.z + levelY - 1); z++) {
+                                int levelZ = levelY - Math.abs(s.z - z);
+                                for (int x = Math.max(minX, s.x - levelZ + 1); x <= Math.min(minX + 15, s.x + levelZ - 1); x++) {
+                                    int light = levelZ - Math.abs(s.x - x);
+                                    int b = (y & 15) << 8 | (z & 15) << 4 | (x & 15);
+                                    int shift = (b & 1) << 2;
+                                    if (light > (out[b >> 1] >> shift & 15)) {
+                                        out[b >> 1] = (byte) (out[b >> 1] & ~(15 << shift) | light << shift);
+                                        lit = true;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return lit;
+    }
+
+    /*
+     * drops every source inside the block box (inclusive) and hands them to `removedOut` (if not null). Only looks
+     * up the sections the box covers (16 or so for a chunk column), unless that's more than the index holds
+     */
+    int purgeRegion(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, List<DynamicLightSource> removedOut) {
+        if (sections.size() == 0) return 0;
+        int minSy = Math.max(minY >> 4, minSectionY), maxSy = Math.min(maxY >> 4, maxSectionY);
+        if (minSy > maxSy) return 0;
+
+        int removed = 0;
+        long probes = (long) ((maxX >> 4) - (minX >> 4) + 1) * ((maxZ >> 4) - (minZ >> 4) + 1) * (maxSy - minSy + 1);
+        if (probes > sections.size()) {
+            for (int i = sections.size() - 1; i >= 0; i--) {
+                Section section = sections.valueAt(i);
+                if (!section.intersects(minX, minY, minZ, maxX, maxY, maxZ)) continue;
+                removed += purge(section, minX, minY, minZ, maxX, maxY, maxZ, removedOut);
+                if (section.size == 0) {
+                    sections.removeAt(i);
+                }
+            }
+        } else {
+            for (int sx = minX >> 4; sx <= maxX >> 4; sx++) {
+                for (int sz = minZ >> 4; sz <= maxZ >> 4; sz++) {
+                    for (int sy = minSy; sy <= maxSy; sy++) {
+                        long key = sectionKey(sx, sy, sz);
+                        Section section = sections.get(key);
+                        if (section == null) continue;
+                        removed += purge(section, minX, minY, minZ, maxX, maxY, maxZ, removedOut);
+                        if (section.size == 0) {
+                            sections.remove(key);
+                        }
+                    }
+                }
+            }
+        }
+        sourceCount -= removed;
+        return removed;
+    }
+
+    private static int purge(Section section, int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+                             List<DynamicLightSource> removedOut) {
+        int removed = 0;
+        for (int j = section.size - 1; j >= 0; j--) {
+            DynamicLightSource s = section.sources[j];
+            if (s.x >= minX && s.x <= maxX && s.y >= minY && s.y <= maxY && s.z >= minZ && s.z <= maxZ) {
+                section.removeAt(j);
+                if (removedOut != null) removedOut.add(s);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    // per-section iteration
+    int sectionCount() {
+        return sections.size();
+    }
+
+    Section sectionAt(int i) {
+        return sections.valueAt(i);
+    }
+
+    int size() {
+        return sourceCount;
+    }
+
+    void clear() {
+        sections.clear();
+        sourceCount = 0;
+        minSectionY = Integer.MAX_VALUE;
+        maxSectionY = Integer.MIN_VALUE;
+    }
+
+    // 22 bits for x/z sections (enough for +-30M blocks) and 20 for y
+    static long sectionKey(int sx, int sy, int sz) {
+        return ((long) (sx & 0x3FFFFF) << 42) | ((long) (sy & 0xFFFFF) << 22) | (long) (sz & 0x3FFFFF);
+    }
+
+    // back from a key, sign extended
+    static int sectionX(long key) {
+        return (int) (key >> 42);
+    }
+
+    static int sectionY(long key) {
+        return (int) (key << 22 >> 44);
+    }
+
+    static int sectionZ(long key) {
+        return (int) (key << 42 >> 42);
+    }
+
+    static final class Section {
+        final int sx, sy, sz;
+        DynamicLightSource[] sources = new DynamicLightSource[4];
+        int size;
+
+        Section(int sx, int sy, int sz) {
+            this.sx = sx;
+            this.sy = sy;
+            this.sz = sz;
+        }
+
+        DynamicLightSource get(int i) {
+            return sources[i];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void add(DynamicLightSource source) {
+            if (size == sources.length) {
+                DynamicLightSource[] grown = new DynamicLightSource[size * 2];
+                System.arraycopy(sources, 0, grown, 0, size);
+                sources = grown;
+            }
+            sources[size++] = source;
+        }
+
+        boolean remove(DynamicLightSource source) {
+            for (int i = 0; i < size; i++) {
+                if (sources[i] == source) {
+                    removeAt(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void removeAt(int i) {
+            sources[i] = sources[--size];
+            sources[size] = null;
+        }
+
+        boolean intersects(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+            return (sx << 4) <= maxX && (sx << 4) + 15 >= minX
+                    && (sy << 4) <= maxY && (sy << 4) + 15 >= minY
+                    && (sz << 4) <= maxZ && (sz << 4) + 15 >= minZ;
+        }
+    }
+}
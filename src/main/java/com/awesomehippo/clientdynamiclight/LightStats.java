@@ -0,0 +1,104 @@
+package com.awesomehippo.clientdynamiclight;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Live counters and per-phase timings, shown in the F3 text area when the stats overlay is on.
+ * Timings keep the last WINDOW samples of every phase, p50/p99 are only worked out when the overlay draws
+ * (and at most every REFRESH_MS), so keeping them costs a nanoTime per phase.
+ *
+ * Client thread only (the worker's classify time is handed over with the scan result).
+ */
+final class LightStats {
+
+    static final int SCAN = 0; // collecting candidates and submitting the scan
+    static final int CLASSIFY = 1; // worker side of the scan
+    static final int APPLY = 2; // scan result applied on the client thread
+    static final int SOURCES = 3; // level stepping, fading, cleanup
+    static final int RELIGHT = 4; // relight batch or overlay re-render
+    static final String[] PHASE_NAMES = {"scan", "classify", "apply", "sources", "relight"};
+
+    private static final int WINDOW = 256; // samples (about 13s at 20 tps)
+    private static final long REFRESH_MS = 500;
+
+    private final long[][] samples = new long[PHASE_NAMES.length][WINDOW];
+    private final int[] sampleCounts = new int[PHASE_NAMES.length];
+    private final long[] sorted = new long[WINDOW];
+
+    // counters
+    private int pendingUpdates;
+    private int activeSources;
+    private int relightsLastTick;
+    private long relightsTotal;
+    private int queuedLastTick;
+    private long droppedTasks;
+    private int seenLastScan;
+
+    private boolean visible;
+    private final String[] lines = new String[3 + PHASE_NAMES.length];
+    private long linesBuiltAt;
+
+    void record(int phase, long nanos) {
+        samples[phase][sampleCounts[phase]++ % WINDOW] = nanos;
+    }
+
+    void tick(int pendingUpdates, int activeSources, int relights, int queued) {
+        this.pendingUpdates = pendingUpdates;
+        this.activeSources = activeSources;
+        this.relightsLastTick = relights;
+        this.relightsTotal += relights;
+        this.queuedLastTick = queued;
+    }
+
+    void scanApplied(int seen) {
+        seenLastScan = seen;
+    }
+
+    void taskDropped() {
+        droppedTasks++;
+    }
+
+    long droppedTasks() {
+        return droppedTasks;
+    }
+
+    boolean toggle() {
+        visible = !visible;
+        linesBuiltAt = 0;
+        return visible;
+    }
+
+    boolean isVisible() {
+        return visible;
+    }
+
+    /* appends the overlay lines (F3 style, left side) */
+    void addLines(List<String> out) {
+        long now = System.currentTimeMillis();
+        if (now - linesBuiltAt >= REFRESH_MS) {
+            buildLines();
+            linesBuiltAt = now;
+        }
+        out.add("");
+        out.addAll(Arrays.asList(lines));
+    }
+
+    private void buildLines() {
+        lines[0] = "[Dynamic Light] sources: " + activeSources + ", seen: " + seenLastScan;
+        lines[1] = "pending: " + pendingUpdates + ", queued/t: " + queuedLastTick
+                + ", relights/t: " + relightsLastTick + " (" + relightsTotal + " total)";
+        lines[2] = "stale scans dropped: " + droppedTasks;
+        for (int phase = 0; phase < PHASE_NAMES.length; phase++) {
+            int n = Math.min(sampleCounts[phase], WINDOW);
+            if (n == 0) {
+                lines[3 + phase] = PHASE_NAMES[phase] + ": -";
+                continue;
+            }
+            System.arraycopy(samples[phase], 0, sorted, 0, n);
+            Arrays.sort(sorted, 0, n);
+            lines[3 + phase] = String.format("%s: p50 %.3f ms, p99 %.3f ms",
+                    PHASE_NAMES[phase], sorted[n / 2] / 1e6, sorted[Math.min(n - 1, n * 99 / 100)] / 1e6);
+        }
+    }
+}
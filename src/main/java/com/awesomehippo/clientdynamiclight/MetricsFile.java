@@ -0,0 +1,167 @@
+package com.awesomehippo.clientdynamiclight;
+
+import cpw.mods.fml.common.Loader;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/*
+ * Rolling metrics file (config/clientdynamiclight/metrics.csv) for looking at a session afterwards, in a
+ * spreadsheet or with a script. Off unless "metricsFile" is set in the general config.
+ *
+ * Ticks are summed up and written as one line every LINE_TICKS (about a second), so the cost is a few adds per
+ * phase and a buffered line per second. Past MAX_BYTES the file moves to metrics.1.csv and a new one starts,
+ * a new session also starts a new one.
+ *
+ * Columns: wall clock (ms), world time, ticks in the line, active sources, entities seen by the last scan,
+ * pending updates, queued/relights/scans/dropped tasks over the line, then avg/max ms of every LightStats phase.
+ *
+ * Client thread only.
+ */
+final class MetricsFile {
+
+    private static final String FILE_NAME = "metrics.csv";
+    private static final String ROLLED_NAME = "metrics.1.csv";
+    private static final int LINE_TICKS = 20;
+    private static final long MAX_BYTES = 5L << 20;
+
+    private static final int PHASES = LightStats.PHASE_NAMES.length;
+
+    private Writer out;
+    private File file;
+    private long bytes;
+    private final StringBuilder line = new StringBuilder(256);
+    private boolean failed; // can't write, don't retry until turned off and on again
+
+    // summed since the last line
+    private int ticks;
+    private int queued;
+    private int relights;
+    private int scans;
+    private int seenLastScan;
+    private long droppedAtLastLine;
+    private final long[] phaseSums = new long[PHASES];
+    private final long[] phaseMaxes = new long[PHASES];
+    private final int[] phaseCounts = new int[PHASES];
+
+    void record(int phase, long nanos) {
+        if (out == null) return;
+        phaseSums[phase] += nanos;
+        phaseCounts[phase]++;
+        if (nanos > phaseMaxes[phase]) phaseMaxes[phase] = nanos;
+    }
+
+    void scanApplied(int seen) {
+        if (out == null) return;
+        scans++;
+        seenLastScan = seen;
+    }
+
+    /* end of a client tick, writes a line every LINE_TICKS */
+    void tick(boolean enabled, long worldTime, int sources, int pending, int queued, int relights, long dropped) {
+        if (!enabled) {
+            close();
+            failed = false;
+            return;
+        }
+        if (out == null && (failed || !open(dropped))) return;
+
+        ticks++;
+        this.queued += queued;
+        this.relights += relights;
+        if (ticks < LINE_TICKS) return;
+
+        line.setLength(0);
+        line.append(System.currentTimeMillis()).append(',').append(worldTime).append(',').append(ticks)
+                .append(',').append(sources).append(',').append(seenLastScan).append(',').append(pending)
+                .append(',').append(this.queued).append(',').append(this.relights).append(',').append(scans)
+                .append(',').append(dropped - droppedAtLastLine);
+        for (int phase = 0; phase < PHASES; phase++) {
+            int n = phaseCounts[phase];
+            line.append(',').append(ms(n > 0 ? phaseSums[phase] / n : 0))
+                    .append(',').append(ms(phaseMaxes[phase]));
+        }
+        line.append('\n');
+        write();
+        reset(dropped);
+
+        if (bytes > MAX_BYTES) {
+            close();
+            open(dropped);
+        }
+    }
+
+    private void reset(long dropped) {
+        ticks = 0;
+        queued = 0;
+        relights = 0;
+        scans = 0;
+        droppedAtLastLine = dropped;
+        for (int phase = 0; phase < PHASES; phase++) {
+            phaseSums[phase] = 0;
+            phaseMaxes[phase] = 0;
+            phaseCounts[phase] = 0;
+        }
+    }
+
+    private static String ms(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    /* the previous file (if any) is kept as metrics.1.csv */
+    private boolean open(long dropped) {
+        File dir = new File(Loader.instance().getConfigDir(), "clientdynamiclight");
+        File f = new File(dir, FILE_NAME);
+        try {
+            dir.mkdirs();
+            if (f.exists()) {
+                File rolled = new File(dir, ROLLED_NAME);
+                rolled.delete();
+                if (!f.renameTo(rolled)) f.delete();
+            }
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8), 1 << 14);
+            file = f;
+        } catch (IOException e) {
+            e.printStackTrace();
+            out = null;
+            failed = true;
+            return false;
+        }
+
+        bytes = 0;
+        reset(dropped);
+        line.setLength(0);
+        line.append("time,worldTime,ticks,sources,seen,pending,queued,relights,scans,dropped");
+        for (String name : LightStats.PHASE_NAMES) {
+            line.append(',').append(name).append("AvgMs,").append(name).append("MaxMs");
+        }
+        line.append('\n');
+        write();
+        return out != null;
+    }
+
+    void close() {
+        if (out == null) return;
+        try {
+            out.close();
+            System.out.println("[ClientDynamicLight] Light metrics written to " + file.getAbsolutePath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        out = null;
+        file = null;
+    }
+
+    private void write() {
+        try {
+            out.append(line);
+            out.flush(); // once a second, so a crash still leaves the last lines
+            bytes += line.length();
+        } catch (IOException e) {
+            e.printStackTrace();
+            failed = true;
+            close(); // disk full or similar, don't keep failing every second
+        }
+    }
+}
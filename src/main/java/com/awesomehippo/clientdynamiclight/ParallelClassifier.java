@@ -0,0 +1,125 @@
+package com.awesomehippo.clientdynamiclight;
+
+import com.awesomehippo.clientdynamiclight.config.EntityConfigLoader;
+import com.awesomehippo.clientdynamiclight.config.ItemsConfigLoader;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Light levels of the in-range entries of a snapshot, worked out on the scan worker. Entries whose inputs didn't
+ * change come from the LightLevelMemo, the misses go to the config loaders, split over a small fork-join pool
+ * for big scans (item farms, mob grinders). Below THRESHOLD misses the hand-off isn't worth it.
+ *
+ * Never touches a World or a live Entity: it reads the snapshot, filled on the client thread before the scan is
+ * submitted, and the config loaders, whose rules are swapped whole through volatile fields. Anything that needs
+ * blocks (the lava check) waits for apply() on the client thread, which then merges the levels into the light map.
+ */
+final class ParallelClassifier {
+
+    // were 512 and 128 while leaves read live entities, a level from the snapshot is a table or class map lookup,
+    // so it takes more entries to pay for the hand-off and for each leaf. ClassifyLevelsBenchmark has inline
+    // against fork-join by misses and leaf size, these go where fork-join starts to win (rerun it if the lookups change)
+    static final int THRESHOLD = 2048; // memo misses
+
+    static final int LEAF_SIZE = 256; // misses per fork-join leaf
+
+    // the client thread keeps a core busy, so one thread less than the cores (3 at most, it's short work)
+    private static final ForkJoinPool POOL = new ForkJoinPool(
+            Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors() - 1)),
+            pool -> {
+                ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool); // daemon
+                t.setName("ClientDynamicLight classify " + t.getPoolIndex());
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }, null, false);
+
+    private ParallelClassifier() {
+    }
+
+    /* fills snapshot.levels (for snapshot.inRange) and snapshot.playerLevel, `memo` is the scan worker's */
+    static void classify(EntitySnapshot snapshot, LightLevelMemo memo) {
+        EntitySnapshot s = snapshot;
+        memo.begin(s.dimension);
+
+        int misses = 0;
+        for (int k = 0; k < s.inRangeCount; k++) {
+            int level = memo.lookup(s, s.inRange[k]);
+            if (level != LightLevelMemo.MISS) {
+                s.levels[k] = level;
+            } else {
+                s.misses[misses++] = k;
+            }
+        }
+        s.missCount = misses;
+        classifyMisses(s, misses >= THRESHOLD, LEAF_SIZE);
+
+        // back on this thread, the memo isn't shared with the pool
+        for (int m = 0; m < misses; m++) {
+            int k = s.misses[m];
+            memo.store(s, s.inRange[k], s.levels[k]);
+        }
+    }
+
+    /* same without a memo or threshold, every in-range entry goes to the config loaders (benchmarks) */
+    static void classify(EntitySnapshot snapshot, boolean forkJoin, int leafSize) {
+        for (int k = 0; k < snapshot.inRangeCount; k++) {
+            snapshot.misses[k] = k;
+        }
+        snapshot.missCount = snapshot.inRangeCount;
+        classifyMisses(snapshot, forkJoin, leafSize);
+    }
+
+    private static void classifyMisses(EntitySnapshot snapshot, boolean forkJoin, int leafSize) {
+        snapshot.playerLevel = ItemsConfigLoader.INSTANCE.getLightLevel(
+                snapshot.playerItemId, snapshot.playerItemDamage, snapshot.dimension, false, true);
+        if (forkJoin) {
+            POOL.invoke(new Leaves(snapshot, 0, snapshot.missCount, leafSize));
+        } else {
+            levels(snapshot, 0, snapshot.missCount);
+        }
+    }
+
+    // misses[from, to)
+    private static void levels(EntitySnapshot s, int from, int to) {
+        for (int m = from; m < to; m++) {
+            int k = s.misses[m];
+            int i = s.inRange[k];
+            switch (s.kinds[i]) {
+                case EntitySnapshot.KIND_DROPPED:
+                    s.levels[k] = ItemsConfigLoader.INSTANCE.getLightLevel(s.itemIds[i], s.itemDamages[i], s.dimension, true, false);
+                    break;
+                case EntitySnapshot.KIND_PLAYER:
+                    s.levels[k] = ItemsConfigLoader.INSTANCE.getLightLevel(s.itemIds[i], s.itemDamages[i], s.dimension, false, true);
+                    break;
+                default:
+                    s.levels[k] = EntityConfigLoader.INSTANCE.getLightLevel(s.types[i], s.dimension, s.states[i]);
+                    break;
+            }
+        }
+    }
+
+    private static final class Leaves extends RecursiveAction {
+        private final EntitySnapshot snapshot;
+        private final int from, to;
+        private final int leafSize;
+
+        Leaves(EntitySnapshot snapshot, int from, int to, int leafSize) {
+            this.snapshot = snapshot;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= leafSize) {
+                levels(snapshot, from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Leaves(snapshot, from, mid, leafSize), new Leaves(snapshot, mid, to, leafSize));
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.awesomehippo.clientdynamiclight;
+
+import com.awesomehippo.clientdynamiclight.util.PackedPos;
+import net.minecraft.block.Block;
+import net.minecraft.world.EnumSkyBlock;
+import net.minecraft.world.World;
+
+import java.util.Arrays;
+
+/*
+ * Relights a whole batch of positions at once instead of one updateLightByType per queued position.
+ *
+ * The budget is spent first, in the order the positions come in (nearest first from the queue), so what goes back
+ * to the queue is the farthest. Only then are the chosen positions sorted by region then section, and every region
+ * is handed to the LightPropagator as one set of seeds: a single decrease pass and a single increase pass settle
+ * all of them, a source moving one block (old and new spheres overlapping almost entirely) no longer floods the
+ * same blocks twice.
+ *
+ * VANILLA_RELIGHT switches back to vanilla updateLightByType per position (darkening ones first, then the
+ * brightening ones the decrease floods didn't already settle), handy to compare results.
+ *
+ * Client thread only.
+ */
+final class RelightBatcher {
+
+    private static final boolean VANILLA_RELIGHT = false;
+
+    // regionKey() layout, 64 blocks regions = 2 bits of section x/z inside one
+    private static final int REGION_SHIFT = LightPropagator.REGION_SHIFT;
+    private static final int REGION_KEY_SHIFT = 20; // key >>> this = region
+    private static final int REGION_BIAS = 1 << 19; // +-30M blocks / 64 fits
+
+    private static final byte PENDING = 0;
+    private static final byte DONE = 1;
+
+    private long[] batch = new long[32];
+    private byte[] state = new byte[32];
+
+    private final LightPropagator propagator = new LightPropagator();
+    private final WorldBlockLightAccess worldAccess = new WorldBlockLightAccess();
+
+    /*
+     * relights the positions, at most `budget` real relights. Positions that didn't fit in the budget go back to
+     * `requeue` (if not null). Returns how many relights were done
+     */
+    int relight(World world, long[] positions, int count, int budget, RenderUpdateQueue requeue) {
+        if (count == 0) return 0;
+        if (VANILLA_RELIGHT) {
+            // one flood per position anyway, grouping wouldn't save anything, the budget follows the drain order
+            ensureCapacity(count);
+            System.arraycopy(positions, 0, batch, 0, count);
+            return relightVanilla(world, count, budget, requeue);
+        }
+
+        int relights = relight(worldAccess.bind(world), positions, count, budget, requeue);
+        worldAccess.bind(null);
+        return relights;
+    }
+
+    /* same with the propagator over any block light, no World needed (trace replays) */
+    int relight(BlockLightAccess access, long[] positions, int count, int budget, RenderUpdateQueue requeue) {
+        if (count == 0) return 0;
+        ensureCapacity(count);
+
+        // budget in drain order, positions whose light is already right don't count
+        int chosen = 0;
+        for (int i = 0; i < count; i++) {
+            long pos = positions[i];
+            if (chosen >= budget) {
+                if (requeue != null) requeue.add(pos);
+            } else if (LightPropagator.needsRelight(access, PackedPos.x(pos), PackedPos.y(pos), PackedPos.z(pos))) {
+                batch[chosen++] = pos;
+            }
+        }
+
+        // sorted as region keys, a plain primitive sort whatever the size (cleanups send a whole world at once)
+        for (int i = 0; i < chosen; i++) {
+            batch[i] = regionKey(batch[i]);
+        }
+        Arrays.sort(batch, 0, chosen);
+
+        int i = 0;
+        while (i < chosen) {
+            long region = batch[i] >>> REGION_KEY_SHIFT;
+            long first = positionOf(batch[i]);
+            propagator.begin(access, PackedPos.x(first), PackedPos.z(first));
+            for (; i < chosen && batch[i] >>> REGION_KEY_SHIFT == region; i++) {
+                long pos = positionOf(batch[i]);
+                // false if a region before already settled it
+                propagator.addSeed(PackedPos.x(pos), PackedPos.y(pos), PackedPos.z(pos));
+            }
+            propagator.propagate();
+        }
+        return chosen;
+    }
+
+    private void ensureCapacity(int count) {
+        if (batch.length < count) {
+            batch = new long[count];
+            state = new byte[count];
+        }
+    }
+
+    private int relightVanilla(World world, int count, int budget, RenderUpdateQueue requeue) {
+        Arrays.fill(state, 0, count, PENDING);
+        int relights = 0;
+
+        // darkening first
+        for (int i = 0; i < count; i++) {
+            long pos = batch[i];
+            int x = PackedPos.x(pos), y = PackedPos.y(pos), z = PackedPos.z(pos);
+            if (world.getSavedLightValue(EnumSkyBlock.Block, x, y, z) > emittedLight(world, x, y, z)) {
+                relights += relightOrRequeue(world, pos, relights < budget, requeue);
+                state[i] = DONE;
+            }
+        }
+
+        // then whatever the floods above didn't already bring up to its emitted light
+        for (int i = 0; i < count; i++) {
+            if (state[i] == DONE) continue;
+
+            long pos = batch[i];
+            int x = PackedPos.x(pos), y = PackedPos.y(pos), z = PackedPos.z(pos);
+            if (world.getSavedLightValue(EnumSkyBlock.Block, x, y, z) < emittedLight(world, x, y, z)) {
+                relights += relightOrRequeue(world, pos, relights < budget, requeue);
+            }
+            state[i] = DONE;
+        }
+        return relights;
+    }
+
+    private static int relightOrRequeue(World world, long pos, boolean inBudget, RenderUpdateQueue requeue) {
+        if (inBudget) {
+            world.updateLightByType(EnumSkyBlock.Block, PackedPos.x(pos), PackedPos.y(pos), PackedPos.z(pos));
+            return 1;
+        }
+        if (requeue != null) {
+            requeue.add(pos);
+        }
+        return 0;
+    }
+
+    // what computeLightValue would use as the block's own light, dynamic light included
+    private static int emittedLight(World world, int x, int y, int z) {
+        Block block = world.getBlock(x, y, z);
+        return ClientDynamicLightHandler.getLightValue(world, block, x, y, z);
+    }
+
+    /*
+     * region x (20 bits) | region z (20) | section y (4) | section x, z in the region (2 + 2) | block y, z, x (4 + 4
+     * + 4), so sorting the keys groups by region then section. Regions are biased to stay positive, y is 0..255
+     */
+    static long regionKey(long pos) {
+        int x = PackedPos.x(pos), y = PackedPos.y(pos), z = PackedPos.z(pos);
+        long rx = (x >> REGION_SHIFT) + REGION_BIAS;
+        long rz = (z >> REGION_SHIFT) + REGION_BIAS;
+        return rx << 40 | rz << REGION_KEY_SHIFT | (long) (y >> 4) << 16 | ((x >> 4) & 3) << 14 | ((z >> 4) & 3) << 12
+                | (y & 15) << 8 | (z & 15) << 4 | (x & 15);
+    }
+
+    static long positionOf(long key) {
+        int x = ((int) (key >>> 40) - REGION_BIAS) << REGION_SHIFT | (int) (key >>> 14 & 3) << 4 | (int) (key & 15);
+        int z = ((int) (key >>> REGION_KEY_SHIFT & 0xFFFFF) - REGION_BIAS) << REGION_SHIFT
+                | (int) (key >>> 12 & 3) << 4 | (int) (key >>> 4 & 15);
+        int y = (int) (key >>> 16 & 15) << 4 | (int) (key >>> 8 & 15);
+        return PackedPos.pack(x, y, z);
+    }
+}
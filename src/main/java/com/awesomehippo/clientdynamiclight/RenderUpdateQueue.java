@@ -0,0 +1,134 @@
+package com.awesomehippo.clientdynamiclight;
+
+import com.awesomehippo.clientdynamiclight.util.LongByteHashMap;
+import com.awesomehippo.clientdynamiclight.util.PackedPos;
+
+import java.util.Arrays;
+
+/*
+ * Pending relights, keyed by packed position. Queuing a position that is already pending is a no-op
+ * (the relight reads the current max level anyway), so the per-tick budget is never spent on duplicates.
+ *
+ * Priorities aren't frozen at enqueue time: every drain buckets the pending positions into distance rings
+ * around the CURRENT player position and takes the nearest rings first. With a ViewCone, everything on screen
+ * goes before anything off screen, and while something visible is pending only a few off screen positions are
+ * taken per drain: the rest waits until it comes into view or there's nothing visible left to do, then the
+ * whole budget goes to it.
+ *
+ * Client thread only.
+ */
+final class RenderUpdateQueue {
+
+    private static final int RING_SIZE = 8; // blocks per ring
+    private static final int RING_COUNT = 16; // anything further is in the last ring
+    private static final int BUCKETS = RING_COUNT * 2; // visible rings, then off screen rings
+
+    private long[] positions = new long[64];
+    private byte[] rings = new byte[64]; // scratch for drain()
+    private int size;
+    private final LongByteHashMap queued = new LongByteHashMap(); // used as a set
+    private final int[] ringCounts = new int[BUCKETS];
+    private final int[] ringTakes = new int[BUCKETS];
+
+    /* returns false if the position was already pending */
+    boolean add(long pos) {
+        if (queued.put(pos, 1) != 0) {
+            return false;
+        }
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, size * 2);
+            rings = Arrays.copyOf(rings, size * 2);
+        }
+        positions[size++] = pos;
+        return true;
+    }
+
+    /*
+     * moves up to `max` pending positions into `out`, visible then nearest ring first, at most `maxOffscreen` of
+     * them off screen unless nothing visible is pending (`view` null = everything is on screen). Returns how many
+     * were taken
+     */
+    int drainNearest(double px, double py, double pz, ViewCone view, int max, int maxOffscreen, long[] out) {
+        int limit = Math.min(max, out.length);
+        if (size <= limit && view == null) {
+            int n = size;
+            System.arraycopy(positions, 0, out, 0, n);
+            clear();
+            return n;
+        }
+
+        // counting pass over the rings
+        Arrays.fill(ringCounts, 0);
+        for (int i = 0; i < size; i++) {
+            long pos = positions[i];
+            int ring = ringOf(pos, px, py, pz);
+            if (!ViewCone.isVisible(view, PackedPos.x(pos), PackedPos.y(pos), PackedPos.z(pos))) {
+                ring += RING_COUNT;
+            }
+            rings[i] = (byte) ring;
+            ringCounts[ring]++;
+        }
+
+        // how many entries each ring gives, in priority order
+        int visible = 0;
+        for (int ring = 0; ring < RING_COUNT; ring++) {
+            visible += ringCounts[ring];
+        }
+        int remaining = limit;
+        int offscreenLeft = visible == 0 ? limit : maxOffscreen;
+        for (int ring = 0; ring < BUCKETS; ring++) {
+            int available = ring < RING_COUNT ? ringCounts[ring] : Math.min(ringCounts[ring], offscreenLeft);
+            int take = Math.min(available, remaining);
+            ringTakes[ring] = take;
+            remaining -= take;
+            if (ring >= RING_COUNT) offscreenLeft -= take;
+        }
+        int total = limit - remaining;
+
+        // backwards so swapping the last entry into a taken slot never skips anything
+        int n = 0;
+        for (int i = size - 1; i >= 0 && n < total; i--) {
+            int ring = rings[i];
+            if (ringTakes[ring] == 0) continue;
+            ringTakes[ring]--;
+
+            long pos = positions[i];
+            out[n++] = pos;
+            queued.remove(pos);
+            size--;
+            positions[i] = positions[size];
+            rings[i] = rings[size];
+        }
+        return n;
+    }
+
+    /* moves every pending position into `out` (at least size() long), in no particular order. Returns how many */
+    int drainAll(long[] out) {
+        int n = size;
+        System.arraycopy(positions, 0, out, 0, n);
+        clear();
+        return n;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+        queued.clear();
+    }
+
+    // chebyshev distance is plenty for rings and avoids a sqrt
+    private static int ringOf(long pos, double px, double py, double pz) {
+        double dx = Math.abs(PackedPos.x(pos) - px);
+        double dy = Math.abs(PackedPos.y(pos) - py);
+        double dz = Math.abs(PackedPos.z(pos) - pz);
+        int ring = (int) (Math.max(dx, Math.max(dy, dz)) / RING_SIZE);
+        return Math.min(ring, RING_COUNT - 1);
+    }
+}
@@ -0,0 +1,79 @@
+package com.awesomehippo.clientdynamiclight;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Runs scans on one background thread, latest wins: at most one scan running and one waiting. A scan submitted
+ * while another one waits replaces it, so the worker never works through a backlog of old entity snapshots.
+ *
+ * Finished scans are picked up by the client thread (takeResult(), once per tick) instead of being scheduled on
+ * it, so handing a result over doesn't allocate. Same rule there: a result that finished after another one the
+ * client thread hadn't taken yet replaces it, the older one goes to takeStale() so its owner can reuse it.
+ *
+ * The worker is a plain thread parked between scans, waking it up and handing scans around never allocates
+ * (an executor's queue allocates a node per task).
+ */
+final class ScanScheduler {
+
+    interface Scan extends Runnable {
+    }
+
+    // one thread whatever the core count
+    private final Thread worker;
+    private final AtomicReference<Scan> pending = new AtomicReference<>();
+    private final AtomicReference<Scan> result = new AtomicReference<>();
+    private final AtomicReference<Scan> stale = new AtomicReference<>(); // replaced result, never applied
+
+    ScanScheduler(String threadName) {
+        worker = new Thread(this::drain, threadName);
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY); //min_priority or norm -1 should be good
+        worker.start(); // parked whenever there's nothing to scan, menus included
+    }
+
+    /* returns the waiting scan this one replaced (it never ran), or null */
+    Scan submit(Scan scan) {
+        Scan old = pending.getAndSet(scan);
+        LockSupport.unpark(worker); // if it's about to park, it returns right away
+        return old;
+    }
+
+    /* forgets the waiting scan and any result not taken yet (the running one still finishes, see takeResult()) */
+    void clearPending() {
+        pending.set(null);
+        result.set(null);
+        stale.set(null);
+    }
+
+    /* latest finished scan the client thread hasn't taken yet, or null */
+    Scan takeResult() {
+        return result.getAndSet(null);
+    }
+
+    /* a finished scan a newer result replaced before it was taken, or null */
+    Scan takeStale() {
+        return stale.getAndSet(null);
+    }
+
+    private void drain() {
+        while (true) {
+            Scan scan = pending.getAndSet(null);
+            if (scan == null) {
+                LockSupport.park(this); // may also wake up for nothing, then there's just nothing pending
+                continue;
+            }
+            try {
+                scan.run();
+            } catch (Throwable t) {
+                t.printStackTrace(); // keep the worker going, the next scan may be fine
+                continue;
+            }
+            // a third result in a row before the client thread took any is simply not reused
+            Scan replaced = result.getAndSet(scan);
+            if (replaced != null) {
+                stale.set(replaced);
+            }
+        }
+    }
+}
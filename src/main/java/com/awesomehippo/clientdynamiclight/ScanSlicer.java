@@ -0,0 +1,94 @@
+package com.awesomehippo.clientdynamiclight;
+
+/*
+ * Time slicing of the scan area. The cube around the player is split into chunk column sectors: the ones right
+ * next to the player are rescanned every tick, outer rings round-robin every few ticks. When the outer sectors of
+ * the last scans went over the per-tick budget the outer periods stretch, and they shrink back once there's room.
+ * Outer sectors that are off screen (see ViewCone) wait OFFSCREEN_FACTOR times longer.
+ *
+ * isDue() only depends on the values captured for one scan, so the snapshot filter and the client-side
+ * "who wasn't seen" pass always agree on which sectors were actually scanned. DueSectors works it out once per
+ * sector for a scan, the client thread then only copies the candidates of due sectors into the snapshot.
+ */
+final class ScanSlicer {
+
+    static final int NEAR_RINGS = 1; // sectors within 1 chunk of the player are always scanned
+    private static final int MAX_SCALE = 8;
+    private static final int OFFSCREEN_FACTOR = 4;
+
+    private final int budget; // outer sector entities per tick
+    private int scale = 1;
+
+    ScanSlicer(int budget) {
+        this.budget = budget;
+    }
+
+    int scale() {
+        return scale;
+    }
+
+    static boolean isDue(long tick, int playerChunkX, int playerChunkZ, int scale, ViewCone view, int chunkX, int chunkZ) {
+        int ring = Math.max(Math.abs(chunkX - playerChunkX), Math.abs(chunkZ - playerChunkZ));
+        if (ring <= NEAR_RINGS) {
+            return true;
+        }
+        int period = (ring == NEAR_RINGS + 1 ? 2 : 4) * scale;
+        if (!ViewCone.isColumnVisible(view, chunkX, chunkZ)) {
+            period *= OFFSCREEN_FACTOR;
+        }
+        // spread neighbouring sectors over different ticks
+        return Math.floorMod(tick + chunkX * 7L + chunkZ * 13L, (long) period) == 0;
+    }
+
+    static boolean isOuter(int playerChunkX, int playerChunkZ, int chunkX, int chunkZ) {
+        return Math.max(Math.abs(chunkX - playerChunkX), Math.abs(chunkZ - playerChunkZ)) > NEAR_RINGS;
+    }
+
+    /* the sectors due for one scan, around the player's chunk, worked out once when the scan is set up */
+    static final class DueSectors {
+        private final int radius; // chunks, past that isDue() is asked directly
+        private final int side;
+        private final boolean[] due;
+        private long tick;
+        private int playerChunkX, playerChunkZ, scale;
+        private ViewCone view;
+
+        DueSectors(int radius) {
+            this.radius = radius;
+            this.side = radius * 2 + 1;
+            this.due = new boolean[side * side];
+        }
+
+        void set(long tick, int playerChunkX, int playerChunkZ, int scale, ViewCone view) {
+            this.tick = tick;
+            this.playerChunkX = playerChunkX;
+            this.playerChunkZ = playerChunkZ;
+            this.scale = scale;
+            this.view = view;
+            for (int dz = 0; dz < side; dz++) {
+                for (int dx = 0; dx < side; dx++) {
+                    due[dz * side + dx] = isDue(tick, playerChunkX, playerChunkZ, scale, view,
+                            playerChunkX + dx - radius, playerChunkZ + dz - radius);
+                }
+            }
+        }
+
+        boolean contains(int blockX, int blockZ) {
+            int dx = (blockX >> 4) - playerChunkX + radius;
+            int dz = (blockZ >> 4) - playerChunkZ + radius;
+            if (dx >= 0 && dx < side && dz >= 0 && dz < side) {
+                return due[dz * side + dx];
+            }
+            return isDue(tick, playerChunkX, playerChunkZ, scale, view, blockX >> 4, blockZ >> 4);
+        }
+    }
+
+    /* feedback from the last scan: how many entities of outer sectors it had to go through */
+    void report(int outerEntities) {
+        if (outerEntities > budget && scale < MAX_SCALE) {
+            scale <<= 1;
+        } else if (outerEntities < budget / 4 && scale > 1) {
+            scale >>= 1;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.awesomehippo.clientdynamiclight;
+
+import com.awesomehippo.clientdynamiclight.util.IntObjectHashMap;
+import com.awesomehippo.clientdynamiclight.util.LongObjectHashMap;
+import com.awesomehippo.clientdynamiclight.util.PackedPos;
+import net.minecraft.util.MathHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Merges lights seen close together (a dropped inventory of torches, a glowstone farm's collector) into one
+ * source at their centroid, with the brightest level. The light looks the same, but it's one source to move,
+ * fade and relight instead of dozens.
+ *
+ * Worked out again on every scan, so members that drift apart split back into their own sources (the source of
+ * an entity that joined a cluster just fades out, like one that wasn't seen). A cluster is kept under the id of
+ * a member that already has a source if there's one, so a pile that keeps moving keeps its source.
+ *
+ * Each light joins the first cluster whose first member is within RADIUS, so a cluster never spans more than
+ * twice that. The player and unlit entries (sources fading out) are never merged.
+ *
+ * Client thread only.
+ */
+final class SourceClusters {
+
+    static final double RADIUS = 2.0; // blocks, from the first member
+
+    private final LongObjectHashMap<Cluster> cells = new LongObjectHashMap<>(); // by RADIUS sized cell, chained
+    private final List<Cluster> clusters = new ArrayList<>();
+    private int used;
+
+    /* `seen` with the lights close to each other merged, into `out` */
+    void merge(ClientDynamicLightHandler.SeenEntities seen, IntObjectHashMap<DynamicLightSource> lightMap, int playerId,
+               ClientDynamicLightHandler.SeenEntities out) {
+        out.clear();
+        cells.clear();
+        used = 0;
+
+        for (int i = 0; i < seen.size; i++) {
+            int id = seen.ids[i];
+            if (seen.levels[i] <= 0 || id == playerId) {
+                out.add(id, seen.levels[i], seen.xs[i], seen.ys[i], seen.zs[i], seen.itemIds[i], seen.itemDamages[i], seen.burning[i]);
+                continue;
+            }
+
+            double x = seen.xs[i], y = seen.ys[i], z = seen.zs[i];
+            Cluster cluster = find(x, y, z);
+            if (cluster == null) {
+                cluster = next();
+                cluster.seed(x, y, z);
+                long cell = cellOf(x, y, z);
+                cluster.nextInCell = cells.get(cell);
+                cells.put(cell, cluster);
+            }
+            DynamicLightSource source = lightMap.get(id);
+            cluster.add(i, id, seen.levels[i], x, y, z, source != null ? source.level : -1);
+        }
+
+        for (int c = 0; c < used; c++) {
+            Cluster cluster = clusters.get(c);
+            int i = cluster.leader; // its item and burning state stand for the whole cluster in traces
+            double n = cluster.count;
+            out.add(seen.ids[i], cluster.maxLevel, cluster.sumX / n, cluster.sumY / n, cluster.sumZ / n,
+                    seen.itemIds[i], seen.itemDamages[i], seen.burning[i]);
+        }
+    }
+
+    // a cluster whose first member is within RADIUS, the cell and its 26 neighbours can hold one
+    private Cluster find(double x, double y, double z) {
+        int cx = cellCoord(x), cy = cellCoord(y), cz = cellCoord(z);
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    for (Cluster c = cells.get(PackedPos.pack(cx + dx, cy + dy, cz + dz)); c != null; c = c.nextInCell) {
+                        double ex = x - c.seedX, ey = y - c.seedY, ez = z - c.seedZ;
+                        if (ex * ex + ey * ey + ez * ez <= RADIUS * RADIUS) {
+                            return c;
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int cellCoord(double v) {
+        return MathHelper.floor_double(v / RADIUS);
+    }
+
+    private static long cellOf(double x, double y, double z) {
+        return PackedPos.pack(cellCoord(x), cellCoord(y), cellCoord(z));
+    }
+
+    // reused between scans
+    private Cluster next() {
+        if (used == clusters.size()) {
+            clusters.add(new Cluster());
+        }
+        return clusters.get(used++);
+    }
+
+    private static final class Cluster {
+        double seedX, seedY, seedZ;
+        Cluster nextInCell;
+
+        double sumX, sumY, sumZ;
+        int count;
+        int maxLevel;
+        int leader; // index into seen
+        int leaderId;
+        int leaderSourceLevel; // -1 = no source yet
+
+        void seed(double x, double y, double z) {
+            seedX = x;
+            seedY = y;
+            seedZ = z;
+            nextInCell = null;
+            sumX = sumY = sumZ = 0;
+            count = 0;
+            maxLevel = 0;
+            leader = -1;
+        }
+
+        void add(int index, int id, int level, double x, double y, double z, int sourceLevel) {
+            sumX += x;
+            sumY += y;
+            sumZ += z;
+            count++;
+            maxLevel = Math.max(maxLevel, level);
+
+            // the brightest existing source leads, then the lowest id, so the leader doesn't hop between scans
+            if (leader < 0 || sourceLevel > leaderSourceLevel || (sourceLevel == leaderSourceLevel && id < leaderId)) {
+                leader = index;
+                leaderId = id;
+                leaderSourceLevel = sourceLevel;
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.awesomehippo.clientdynamiclight;
+
+/*
+ * When a source follows its entity to another block.
+ *
+ * Hysteresis: the entity has to be HYSTERESIS past the edge of the source's block (or LOD cell) before the
+ * source moves, so a mob bobbing in water or an item sitting on a block edge doesn't relight two blocks
+ * every few ticks.
+ *
+ * Look-ahead (optional, general config): for entities moving faster than FAST_SPEED, the source is placed
+ * where the entity will be LOOK_AHEAD_TICKS later, from its speed since the last scan, so the light is
+ * already there when it arrives instead of trailing one relight behind.
+ */
+final class SourceMotion {
+
+    private static final double HYSTERESIS = 0.3; // blocks
+    private static final double FAST_SPEED = 0.25; // blocks per tick, a bit less than sprinting
+    private static final int LOOK_AHEAD_TICKS = 2;
+    private static final double MAX_LOOK_AHEAD = 2; // blocks per axis, so a teleport doesn't throw the light away
+    private static final long MAX_SCAN_GAP = 4; // ticks, speed from older positions isn't worth much
+
+    private SourceMotion() {
+    }
+
+    /* true if a source at the block sx, sy, sz stays put for an entity at x, y, z, `grid` is the LOD cell size */
+    static boolean stays(int sx, int sy, int sz, double x, double y, double z, int grid) {
+        return staysOnAxis(sx, x, grid) && staysOnAxis(sy, y, grid) && staysOnAxis(sz, z, grid);
+    }
+
+    // the cell holding the source (its block when grid is 1), plus HYSTERESIS on both sides
+    private static boolean staysOnAxis(int source, double coord, int grid) {
+        int min = Math.floorDiv(source, grid) * grid;
+        return coord >= min - HYSTERESIS && coord < min + grid + HYSTERESIS;
+    }
+
+    /* true if the entity moved fast enough since the last scan (`ticks` ago) for look-ahead */
+    static boolean isFast(double dx, double dy, double dz, long ticks) {
+        if (ticks <= 0 || ticks > MAX_SCAN_GAP) return false;
+        double speed = FAST_SPEED * ticks;
+        return dx * dx + dy * dy + dz * dz >= speed * speed;
+    }
+
+    /* coordinate LOOK_AHEAD_TICKS ahead, from where it was `ticks` ago */
+    static double ahead(double coord, double previous, long ticks) {
+        double step = (coord - previous) / ticks * LOOK_AHEAD_TICKS;
+        return coord + Math.max(-MAX_LOOK_AHEAD, Math.min(MAX_LOOK_AHEAD, step));
+    }
+}
@@ -0,0 +1,135 @@
+package com.awesomehippo.clientdynamiclight;
+
+import cpw.mods.fml.common.Loader;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.item.Item;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Records what the light logic gets from the game, so a session can be replayed headless (see TraceReplay in
+ * src/jmh). Text, gzipped, one record per line:
+ *
+ *   S <worldTime> <playerId> <count> <x> <y> <z>      scan result applied (player position when scanned),
+ *                                                     followed by its entities:
+ *   E <id> <x> <y> <z> <level> <item|-> <damage> <burning 0|1>
+ *   F <id>                                            source told to fade by that scan
+ *   G <id>                                            source whose entity was gone at tick end
+ *   V <eyeX> <eyeY> <eyeZ> <yaw> <pitch> <fov> <aspect>    view cone of the tick (none = no culling)
+ *   T <worldTime> <playerX> <playerY> <playerZ>       end of a tick, render updates drained from there
+ *
+ * Items and burning state are only there to know what was going on, levels are replayed as recorded.
+ * Client thread only, every call is a no-op while not recording.
+ */
+final class TraceRecorder {
+
+    private static final String HEADER = "# clientdynamiclight trace 1";
+
+    private Writer out;
+    private File file;
+    private final StringBuilder line = new StringBuilder(128);
+
+    boolean isRecording() {
+        return out != null;
+    }
+
+    /* starts a new trace in config/clientdynamiclight/traces, or stops the current one. Returns the file */
+    File toggle() {
+        if (out != null) {
+            File done = file;
+            stop();
+            return done;
+        }
+        File dir = new File(new File(Loader.instance().getConfigDir(), "clientdynamiclight"), "traces");
+        String name = "trace-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date()) + ".txt.gz";
+        start(new File(dir, name));
+        return file;
+    }
+
+    void start(File f) {
+        stop();
+        try {
+            f.getParentFile().mkdirs();
+            out = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(f), 1 << 16), StandardCharsets.UTF_8), 1 << 16);
+            file = f;
+            out.write(HEADER);
+            out.write('\n');
+            System.out.println("[ClientDynamicLight] Recording light trace to " + f.getAbsolutePath());
+        } catch (IOException e) {
+            e.printStackTrace();
+            out = null;
+            file = null;
+        }
+    }
+
+    void stop() {
+        if (out == null) return;
+        try {
+            out.close();
+            System.out.println("[ClientDynamicLight] Light trace saved to " + file.getAbsolutePath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        out = null;
+        file = null;
+    }
+
+    void scan(long worldTime, int playerId, ClientDynamicLightHandler.SeenEntities seen) {
+        if (out == null) return;
+        line.setLength(0);
+        line.append("S ").append(worldTime).append(' ').append(playerId).append(' ').append(seen.size)
+                .append(' ').append(seen.originX).append(' ').append(seen.originY).append(' ').append(seen.originZ).append('\n');
+        for (int i = 0; i < seen.size; i++) {
+            line.append("E ").append(seen.ids[i])
+                    .append(' ').append(seen.xs[i]).append(' ').append(seen.ys[i]).append(' ').append(seen.zs[i])
+                    .append(' ').append(seen.levels[i]);
+            Item item = seen.itemIds[i] >= 0 ? Item.getItemById(seen.itemIds[i]) : null;
+            String name = item != null ? Item.itemRegistry.getNameForObject(item) : null;
+            line.append(' ').append(name != null ? name : "-")
+                    .append(' ').append(seen.itemDamages[i])
+                    .append(' ').append(seen.burning[i] ? 1 : 0).append('\n');
+        }
+        write();
+    }
+
+    void fade(int entityId) {
+        if (out == null) return;
+        line.setLength(0);
+        line.append("F ").append(entityId).append('\n');
+        write();
+    }
+
+    void gone(int entityId) {
+        if (out == null) return;
+        line.setLength(0);
+        line.append("G ").append(entityId).append('\n');
+        write();
+    }
+
+    void endTick(long worldTime, EntityPlayer player, ViewCone view) {
+        if (out == null) return;
+        line.setLength(0);
+        if (view != null) {
+            line.append("V ").append(view.eyeX).append(' ').append(view.eyeY).append(' ').append(view.eyeZ)
+                    .append(' ').append(view.yaw).append(' ').append(view.pitch)
+                    .append(' ').append(view.fovY).append(' ').append(view.aspect).append('\n');
+        }
+        line.append("T ").append(worldTime)
+                .append(' ').append(player.posX).append(' ').append(player.posY).append(' ').append(player.posZ).append('\n');
+        write();
+    }
+
+    private void write() {
+        try {
+            out.append(line);
+        } catch (IOException e) {
+            e.printStackTrace();
+            stop(); // disk full or similar, don't keep failing every tick
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.awesomehippo.clientdynamiclight;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.entity.Entity;
+
+/*
+ * Rough view frustum of one tick: a cone from the player's eyes along the look vector, wide enough for the
+ * screen diagonal plus a margin (fov modifiers, turning the camera before the next tick). Used to spend the
+ * light budget on what's on screen first.
+ *
+ * Light reaches 15 blocks, so a position counts as visible if any of it can light something in the cone, and
+ * everything within ALWAYS_VISIBLE blocks of the player is always visible (so is a chunk column whose light can
+ * reach the eyes). Filled on the client thread before the scan that owns it is
+ * submitted and never changed while that scan is in flight, so the worker can read it.
+ */
+final class ViewCone {
+
+    private static final double MARGIN = Math.toRadians(15);
+    private static final double ALWAYS_VISIBLE = 16; // blocks, more than LIGHT_REACH
+    private static final double LIGHT_REACH = 15;
+    private static final double CHUNK_RADIUS = 11.32; // half diagonal of a chunk column
+
+    double eyeX, eyeY, eyeZ;
+    float yaw, pitch; // what it was built from, kept for traces
+    double fovY, aspect;
+    private double lookX, lookY, lookZ;
+    private double horizLookX, horizLookZ; // look vector flattened, for chunk columns
+    private double halfAngle; // covers the screen diagonal
+    private double halfAngleHoriz; // covers the screen width
+
+    // filled by set(), scans keep one each so capturing the view doesn't allocate every tick
+    ViewCone() {
+    }
+
+    ViewCone(double eyeX, double eyeY, double eyeZ, float yaw, float pitch, double fovY, double aspect) {
+        set(eyeX, eyeY, eyeZ, yaw, pitch, fovY, aspect);
+    }
+
+    ViewCone set(double eyeX, double eyeY, double eyeZ, float yaw, float pitch, double fovY, double aspect) {
+        this.eyeX = eyeX;
+        this.eyeY = eyeY;
+        this.eyeZ = eyeZ;
+        this.yaw = yaw;
+        this.pitch = pitch;
+        this.fovY = fovY;
+        this.aspect = aspect;
+
+        // same as Entity.getLook()
+        double yawCos = Math.cos(-yaw * 0.017453292F - Math.PI);
+        double yawSin = Math.sin(-yaw * 0.017453292F - Math.PI);
+        double pitchCos = -Math.cos(-pitch * 0.017453292F);
+        double pitchSin = Math.sin(-pitch * 0.017453292F);
+        this.lookX = yawSin * pitchCos;
+        this.lookY = pitchSin;
+        this.lookZ = yawCos * pitchCos;
+        this.horizLookX = -yawSin; // pitchCos is negative
+        this.horizLookZ = -yawCos;
+
+        double tanY = Math.tan(Math.toRadians(fovY) / 2);
+        this.halfAngle = Math.atan(tanY * Math.sqrt(1 + aspect * aspect)) + MARGIN;
+        // looking up or down, the flattened cone has to open up to everything around
+        double horiz = Math.atan(tanY * aspect) + MARGIN + Math.abs(Math.toRadians(pitch));
+        this.halfAngleHoriz = Math.min(Math.PI, horiz);
+        return this;
+    }
+
+    /* fills `into`, or null when there's no sensible cone (third person, no player), callers then treat everything as visible */
+    static ViewCone capture(Minecraft mc, ViewCone into) {
+        Entity viewer = mc.thePlayer;
+        if (viewer == null || mc.gameSettings.thirdPersonView != 0 || mc.displayHeight <= 0) {
+            return null;
+        }
+        double aspect = (double) mc.displayWidth / mc.displayHeight;
+        return into.set(viewer.posX, viewer.posY, viewer.posZ, viewer.rotationYaw, viewer.rotationPitch,
+                mc.gameSettings.fovSetting, aspect);
+    }
+
+    static boolean isVisible(ViewCone cone, int x, int y, int z) {
+        return cone == null || cone.isVisible(x + 0.5, y + 0.5, z + 0.5, LIGHT_REACH);
+    }
+
+    static boolean isColumnVisible(ViewCone cone, int chunkX, int chunkZ) {
+        return cone == null || cone.isColumnVisible(chunkX, chunkZ);
+    }
+
+    // sphere against cone, conservative
+    private boolean isVisible(double x, double y, double z, double radius) {
+        double dx = x - eyeX, dy = y - eyeY, dz = z - eyeZ;
+        double dist = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (dist < ALWAYS_VISIBLE) return true; // further than the light reach too, asin() below is fine
+        return withinAngle(dx * lookX + dy * lookY + dz * lookZ, dist, halfAngle + Math.asin(radius / dist));
+    }
+
+    private boolean isColumnVisible(int chunkX, int chunkZ) {
+        if (halfAngleHoriz >= Math.PI) return true;
+        double dx = (chunkX << 4) + 8 - eyeX, dz = (chunkZ << 4) + 8 - eyeZ;
+        double dist = Math.sqrt(dx * dx + dz * dz);
+        double radius = CHUNK_RADIUS + LIGHT_REACH;
+        if (dist < ALWAYS_VISIBLE || dist <= radius) return true; // its light reaches around the player
+        return withinAngle(dx * horizLookX + dz * horizLookZ, dist, halfAngleHoriz + Math.asin(radius / dist));
+    }
+
+    private static boolean withinAngle(double dot, double dist, double maxAngle) {
+        if (maxAngle >= Math.PI) return true;
+        return dot >= dist * Math.cos(maxAngle);
+    }
+}
@@ -0,0 +1,42 @@
+package com.awesomehippo.clientdynamiclight;
+
+import net.minecraft.block.Block;
+import net.minecraft.world.EnumSkyBlock;
+import net.minecraft.world.World;
+
+// BlockLightAccess over a real client world, rebound for every batch so it's never reallocated
+final class WorldBlockLightAccess implements BlockLightAccess {
+
+    private World world;
+
+    WorldBlockLightAccess bind(World world) {
+        this.world = world;
+        return this;
+    }
+
+    @Override
+    public int getSavedLight(int x, int y, int z) {
+        return world.getSavedLightValue(EnumSkyBlock.Block, x, y, z);
+    }
+
+    @Override
+    public void setLight(int x, int y, int z, int level) {
+        world.setLightValue(EnumSkyBlock.Block, x, y, z, level); // also marks the block for a render update
+    }
+
+    @Override
+    public int getOpacity(int x, int y, int z) {
+        return world.getBlock(x, y, z).getLightOpacity(world, x, y, z);
+    }
+
+    @Override
+    public int getEmittedLight(int x, int y, int z) {
+        Block block = world.getBlock(x, y, z);
+        return ClientDynamicLightHandler.getLightValue(world, block, x, y, z);
+    }
+
+    @Override
+    public boolean isAreaLoaded(int x, int y, int z, int radius) {
+        return world.doChunksNearChunkExist(x, y, z, radius);
+    }
+}
@@ -0,0 +1,36 @@
+package com.awesomehippo.clientdynamiclight;
+
+import com.awesomehippo.clientdynamiclight.util.IntObjectHashMap;
+import com.awesomehippo.clientdynamiclight.util.LongByteHashMap;
+import com.awesomehippo.clientdynamiclight.util.SectionMask;
+import net.minecraft.world.World;
+
+/*
+ * Everything we keep per world, hung on the World itself (see LightDataHolder) so it goes away with it.
+ * Written on the client thread only, maxLevels/sectionMask are also read by the hook from anywhere.
+ */
+public final class WorldLightData {
+
+    final World world;
+    final IntObjectHashMap<DynamicLightSource> lightMap = new IntObjectHashMap<>(); // by entity id
+    final LightSourceIndex index = new LightSourceIndex();
+    final LongByteHashMap maxLevels = new LongByteHashMap(); // dynamic level per packed position
+    final SectionMask sectionMask = new SectionMask(); // sections that have an entry in maxLevels
+    private volatile LightOverlay overlay; // overlay mode only
+
+    WorldLightData(World world) {
+        this.world = world;
+    }
+
+    LightOverlay overlay() {
+        if (overlay == null) {
+            overlay = new LightOverlay(world, index);
+        }
+        return overlay;
+    }
+
+    // may be null, for the hook
+    LightOverlay overlayIfPresent() {
+        return overlay;
+    }
+}
@@ -13,6 +13,9 @@ public class ClientDynamicLightTransformer implements IClassTransformer {
     private static final String OBF_WORLD = "ahb";
     private static final String DEOBF_WORLD = "net.minecraft.world.World";
 
+    private static final String OBF_CHUNK_CACHE = "ahr";
+    private static final String DEOBF_CHUNK_CACHE = "net.minecraft.world.ChunkCache";
+
     private static final String OBF_BLOCK_ACCESS = "ahl";
     private static final String DEOBF_BLOCK_ACCESS = "net/minecraft/world/IBlockAccess";
 
@@ -25,6 +28,19 @@ public class ClientDynamicLightTransformer implements IClassTransformer {
     private static final String OBF_DESC = "(IIILahn;)I";
     private static final String DEOBF_DESC = "(IIILnet/minecraft/world/EnumSkyBlock;)I";
 
+    // getLightBrightnessForSkyBlocks, same name in World and ChunkCache (both implement IBlockAccess)
+    private static final String OBF_BRIGHTNESS_METHOD = "c";
+    private static final String DEOBF_BRIGHTNESS_METHOD = "getLightBrightnessForSkyBlocks";
+    private static final String BRIGHTNESS_DESC = "(IIII)I";
+
+    // per-world light data, stored on the World (a ChunkCache keeps the world it was built from)
+    private static final String HOLDER = "com/awesomehippo/clientdynamiclight/LightDataHolder";
+    private static final String DATA_DESC = "Lcom/awesomehippo/clientdynamiclight/WorldLightData;";
+    private static final String DATA_FIELD = "dynamicLightData";
+    private static final String WORLD_FIELD = "dynamicLightWorld";
+    private static final String GET_DATA = "getDynamicLightData";
+    private static final String SET_DATA = "setDynamicLightData";
+
     // patch
     @Override
     public byte[] transform(String name, String transformedName, byte[] classBytes) {
@@ -33,6 +49,11 @@ public class ClientDynamicLightTransformer implements IClassTransformer {
 
             return patchWorldClass(classBytes, isObfuscated);
         }
+        if (OBF_CHUNK_CACHE.equals(name) || DEOBF_CHUNK_CACHE.equals(name)) {
+            boolean isObfuscated = OBF_CHUNK_CACHE.equals(name);
+
+            return patchChunkCacheClass(classBytes, isObfuscated);
+        }
         return classBytes;
     }
 
@@ -45,7 +66,9 @@ public class ClientDynamicLightTransformer implements IClassTransformer {
         final String blockAccessInternal = obfuscated ? OBF_BLOCK_ACCESS : DEOBF_BLOCK_ACCESS;
         final String blockInternal = obfuscated ? OBF_BLOCK : DEOBF_BLOCK;
 
-        // loop through methods to find the one we want to actually tweak
+        final String brightnessMethodName = obfuscated ? OBF_BRIGHTNESS_METHOD : DEOBF_BRIGHTNESS_METHOD;
+
+        // loop through methods to find the ones we want to actually tweak
         for (Object obj : classNode.methods) {
             MethodNode method = (MethodNode) obj;
             if (method.name.equals(targetMethodName) && method.desc.equals(targetMethodDesc)) {
@@ -53,9 +76,11 @@ public class ClientDynamicLightTransformer implements IClassTransformer {
                 if (targetInsn != null) {
                     injectLightValueHook(method, targetInsn, blockAccessInternal, blockInternal);
                 }
-                break;
+            } else if (method.name.equals(brightnessMethodName) && method.desc.equals(BRIGHTNESS_DESC)) {
+                injectBrightnessHook(method, blockAccessInternal);
             }
         }
+        injectWorldDataHolder(classNode);
 
         // modified class
         ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
@@ -63,6 +88,30 @@ public class ClientDynamicLightTransformer implements IClassTransformer {
         return writer.toByteArray();
     }
 
+    // ChunkCache gets the brightness hook (overlay mode, chunk rendering goes through it) and forwards the light data
+    private byte[] patchChunkCacheClass(byte[] classBytes, boolean obfuscated) {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(classBytes).accept(classNode, 0);
+
+        final String brightnessMethodName = obfuscated ? OBF_BRIGHTNESS_METHOD : DEOBF_BRIGHTNESS_METHOD;
+        final String blockAccessInternal = obfuscated ? OBF_BLOCK_ACCESS : DEOBF_BLOCK_ACCESS;
+        final String worldInternal = (obfuscated ? OBF_WORLD : DEOBF_WORLD).replace('.', '/');
+
+        for (Object obj : classNode.methods) {
+            MethodNode method = (MethodNode) obj;
+            if (method.name.equals(brightnessMethodName) && method.desc.equals(BRIGHTNESS_DESC)) {
+                injectBrightnessHook(method, blockAccessInternal);
+            } else if (method.name.equals("<init>") && method.desc.startsWith("(L" + worldInternal + ";")) {
+                injectWorldCapture(classNode, method);
+            }
+        }
+        injectChunkCacheDataHolder(classNode);
+
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+        classNode.accept(writer);
+        return writer.toByteArray();
+    }
+
     private AbstractInsnNode findTargetStoreInsn(MethodNode method, int varIndex) {
         for (AbstractInsnNode insn : method.instructions.toArray()) {
             if (insn instanceof VarInsnNode) {
@@ -100,4 +149,92 @@ public class ClientDynamicLightTransformer implements IClassTransformer {
         method.instructions.insertBefore(targetInsn, inject);
         method.instructions.remove(targetInsn);
     }
+
+    // brightness = getLightBrightness(brightness, this, x, y, z) right before every return
+    private void injectBrightnessHook(MethodNode method, String blockAccess) {
+        for (AbstractInsnNode insn : method.instructions.toArray()) {
+            if (insn.getOpcode() != IRETURN) continue;
+
+            InsnList inject = new InsnList();
+            // the brightness is already on the stack
+            inject.add(new VarInsnNode(ALOAD, 0)); // world/chunk cache
+            inject.add(new VarInsnNode(ILOAD, 1)); // x
+            inject.add(new VarInsnNode(ILOAD, 2)); // y
+            inject.add(new VarInsnNode(ILOAD, 3)); // z
+            inject.add(new MethodInsnNode(INVOKESTATIC,
+                    "com/awesomehippo/clientdynamiclight/ClientDynamicLightHandler",
+                    "getLightBrightness",
+                    "(IL" + blockAccess + ";III)I",
+                    false));
+
+            method.instructions.insertBefore(insn, inject);
+        }
+    }
+
+    // World implements LightDataHolder with a plain field
+    private void injectWorldDataHolder(ClassNode classNode) {
+        classNode.interfaces.add(HOLDER);
+        classNode.fields.add(new FieldNode(ACC_PRIVATE | ACC_VOLATILE, DATA_FIELD, DATA_DESC, null, null));
+
+        MethodNode getter = new MethodNode(ACC_PUBLIC, GET_DATA, "()" + DATA_DESC, null, null);
+        getter.instructions.add(new VarInsnNode(ALOAD, 0));
+        getter.instructions.add(new FieldInsnNode(GETFIELD, classNode.name, DATA_FIELD, DATA_DESC));
+        getter.instructions.add(new InsnNode(ARETURN));
+        classNode.methods.add(getter);
+
+        MethodNode setter = new MethodNode(ACC_PUBLIC, SET_DATA, "(" + DATA_DESC + ")V", null, null);
+        setter.instructions.add(new VarInsnNode(ALOAD, 0));
+        setter.instructions.add(new VarInsnNode(ALOAD, 1));
+        setter.instructions.add(new FieldInsnNode(PUTFIELD, classNode.name, DATA_FIELD, DATA_DESC));
+        setter.instructions.add(new InsnNode(RETURN));
+        classNode.methods.add(setter);
+    }
+
+    // ChunkCache implements LightDataHolder by asking the world it was built from
+    private void injectChunkCacheDataHolder(ClassNode classNode) {
+        classNode.interfaces.add(HOLDER);
+        classNode.fields.add(new FieldNode(ACC_PRIVATE | ACC_FINAL, WORLD_FIELD, "L" + HOLDER + ";", null, null));
+
+        // return world != null ? world.getDynamicLightData() : null;
+        MethodNode getter = new MethodNode(ACC_PUBLIC, GET_DATA, "()" + DATA_DESC, null, null);
+        LabelNode noWorld = new LabelNode();
+        getter.instructions.add(new VarInsnNode(ALOAD, 0));
+        getter.instructions.add(new FieldInsnNode(GETFIELD, classNode.name, WORLD_FIELD, "L" + HOLDER + ";"));
+        getter.instructions.add(new InsnNode(DUP));
+        getter.instructions.add(new JumpInsnNode(IFNULL, noWorld));
+        getter.instructions.add(new MethodInsnNode(INVOKEINTERFACE, HOLDER, GET_DATA, "()" + DATA_DESC, true));
+        getter.instructions.add(new InsnNode(ARETURN));
+        getter.instructions.add(noWorld);
+        getter.instructions.add(new InsnNode(POP));
+        getter.instructions.add(new InsnNode(ACONST_NULL));
+        getter.instructions.add(new InsnNode(ARETURN));
+        classNode.methods.add(getter);
+
+        // the data always belongs to the world
+        MethodNode setter = new MethodNode(ACC_PUBLIC, SET_DATA, "(" + DATA_DESC + ")V", null, null);
+        setter.instructions.add(new InsnNode(RETURN));
+        classNode.methods.add(setter);
+    }
+
+    // this.dynamicLightWorld = world instanceof LightDataHolder ? (LightDataHolder) world : null; before every return
+    private void injectWorldCapture(ClassNode classNode, MethodNode constructor) {
+        for (AbstractInsnNode insn : constructor.instructions.toArray()) {
+            if (insn.getOpcode() != RETURN) continue;
+
+            InsnList inject = new InsnList();
+            LabelNode isHolder = new LabelNode();
+            inject.add(new VarInsnNode(ALOAD, 0));
+            inject.add(new VarInsnNode(ALOAD, 1)); // world, first constructor arg
+            inject.add(new InsnNode(DUP));
+            inject.add(new TypeInsnNode(INSTANCEOF, HOLDER));
+            inject.add(new JumpInsnNode(IFNE, isHolder));
+            inject.add(new InsnNode(POP));
+            inject.add(new InsnNode(ACONST_NULL));
+            inject.add(isHolder);
+            inject.add(new TypeInsnNode(CHECKCAST, HOLDER));
+            inject.add(new FieldInsnNode(PUTFIELD, classNode.name, WORLD_FIELD, "L" + HOLDER + ";"));
+
+            constructor.instructions.insertBefore(insn, inject);
+        }
+    }
 }
\ No newline at end of file
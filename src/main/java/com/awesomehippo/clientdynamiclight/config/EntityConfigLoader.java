@@ -12,50 +12,115 @@ import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public enum EntityConfigLoader {
     INSTANCE;
 
     private static final String FILE_NAME = "config_entities.json";
-    private final List<EntityRule> EntitiesRules = new ArrayList<>();
-    private int burningDefault = 15;
-    private boolean disableInNether = false;
-    private boolean disableInEnd = false;
-    private boolean disableEntities = false;
+    // read from the scan worker too: the rules are swapped as a whole on reload, never changed in place
+    private volatile Rules rules = Rules.EMPTY;
+    private volatile int burningDefault = 15;
+    private volatile boolean disableInNether = false;
+    private volatile boolean disableInEnd = false;
+    private volatile boolean disableEntities = false;
+    private volatile int revision = 0; // bumped whenever the rules change, so caches built from them know they're stale
+
+    // entity state the rules look at, packed (see stateOf)
+    public static final int STATE_BURNING = 1;
+    public static final int STATE_ALIVE = 2;
+    public static final int STATE_CHARGED = 4; // creeper powered or about to explode
+
+    public int getLightLevel(Entity e) {
+        if (disableEntities || e == null) {
+            return 0;
+        }
+
+        // never emits: no rule for its class and not burning, one lookup
+        EntityRule[] rules = rulesFor(e.getClass());
+        if (rules.length == 0 && (burningDefault == 0 || !e.isBurning())) {
+            return 0;
+        }
+        return getLightLevel(e.getClass(), e.worldObj != null ? e.worldObj.provider.dimensionId : 0, stateOf(e));
+    }
 
-    public Integer getLightLevel(Entity e) {
+    /* same from the class and stateOf() of an entity, safe off the client thread (entity snapshots) */
+    public int getLightLevel(Class<?> type, int dimension, int state) {
         if (disableEntities) {
             return 0;
         }
 
+        boolean burning = (state & STATE_BURNING) != 0;
+        EntityRule[] rules = rulesFor(type);
+        if (rules.length == 0 && (burningDefault == 0 || !burning)) {
+            return 0;
+        }
+
         // check nether/end
-        if (e != null && e.worldObj != null) {
-            int dimension = e.worldObj.provider.dimensionId;
-            if ((dimension == -1 && disableInNether) || (dimension == 1 && disableInEnd)) {
-                return 0;
-            }
+        if ((dimension == -1 && disableInNether) || (dimension == 1 && disableInEnd)) {
+            return 0;
+        }
+        // dead entities (death animation) don't emit anything
+        if ((state & STATE_ALIVE) == 0) {
+            return 0;
         }
 
-        // entities rules
-        for (EntityRule r : EntitiesRules) {
-            if (r.matches(e) && e.isEntityAlive()) {
+        // entities rules, already narrowed down to this class
+        for (EntityRule r : rules) {
+            if (r.matches(state)) {
                 return r.light;
             }
         }
         // burning entities
-        if (e.isBurning() && burningDefault > 0 && e.isEntityAlive()) {
+        if (burning && burningDefault > 0) {
             return burningDefault;
         }
 
         return 0;
     }
 
+    public static int stateOf(Entity e) {
+        int state = 0;
+        if (e.isBurning()) state |= STATE_BURNING;
+        if (e.isEntityAlive()) state |= STATE_ALIVE;
+        if (e instanceof EntityCreeper) {
+            EntityCreeper creeper = (EntityCreeper) e;
+            if (creeper.getPowered() || creeper.getCreeperState() == 1) state |= STATE_CHARGED;
+        }
+        return state;
+    }
+
+    /* cheap check for the candidate set: false if this entity can never emit light with the current rules */
+    public boolean mayEmitLight(Entity e) {
+        if (disableEntities) {
+            return false;
+        }
+        if (rulesFor(e.getClass()).length > 0) {
+            return true;
+        }
+        // anything that can catch fire may end up burning
+        return burningDefault > 0 && !e.isImmuneToFire();
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+
+    private EntityRule[] rulesFor(Class<?> cls) {
+        return rules.forClass(cls);
+    }
+
     /* ---------------- read/write handling for config ---------------- */
     //TODO: add more logs?
 
     public void loadConfig() {
-        File cfg = new File(getConfigDir(), FILE_NAME);
+        loadConfig(new File(getConfigDir(), FILE_NAME));
+    }
+
+    // any file, the default config gets written there if it doesn't exist (benchmarks use this)
+    public void loadConfig(File cfg) {
         if (!cfg.exists()) createDefault(cfg);
+        List<EntityRule> loaded = null; // stays null if the file couldn't be read, the old rules are kept
 
         try (Reader r = new InputStreamReader(Files.newInputStream(cfg.toPath()), StandardCharsets.UTF_8)) {
 
@@ -74,7 +139,7 @@ public enum EntityConfigLoader {
             Type listType = new TypeToken<List<JsonEntry>>(){}.getType();
             List<JsonEntry> list = gson.fromJson(root.getAsJsonObject().getAsJsonArray("entities"), listType);
 
-            EntitiesRules.clear();
+            loaded = new ArrayList<>();
 
             for (JsonEntry je : list) {
                 @SuppressWarnings("unchecked")
@@ -86,11 +151,14 @@ public enum EntityConfigLoader {
                     continue;
                 }
                 int lvl = Math.max(0, Math.min(15, je.light)); // cap to 15
-                EntitiesRules.add(new EntityRule(cls, false, lvl, je.special));
+                loaded.add(new EntityRule(cls, false, lvl, je.special));
             }
         } catch (Exception ex) {
             ex.printStackTrace();
         }
+        // a fresh class cache with them, a lookup still running on the old rules only fills the old one
+        rules = new Rules(loaded != null ? loaded.toArray(new EntityRule[0]) : rules.all);
+        revision++;
     }
 
     public void saveConfig() {
@@ -163,6 +231,7 @@ public enum EntityConfigLoader {
 
     public void setBurningDefault(int burningDefault) {
         this.burningDefault = Math.max(0, Math.min(15, burningDefault));
+        revision++;
     }
 
     public boolean isDisableInNether() {
@@ -171,6 +240,7 @@ public enum EntityConfigLoader {
 
     public void setDisableInNether(boolean disableInNether) {
         this.disableInNether = disableInNether;
+        revision++;
     }
 
     public boolean isDisableInEnd() {
@@ -179,6 +249,7 @@ public enum EntityConfigLoader {
 
     public void setDisableInEnd(boolean disableInEnd) {
         this.disableInEnd = disableInEnd;
+        revision++;
     }
 
     public boolean isDisableEntities() {
@@ -187,6 +258,7 @@ public enum EntityConfigLoader {
 
     public void setDisableEntities(boolean disableEntities) {
         this.disableEntities = disableEntities;
+        revision++;
     }
 
     /* config entries class */
@@ -201,29 +273,66 @@ public enum EntityConfigLoader {
         }
     }
 
+    /* the config rules and, tied to them, the rules that can apply to each entity class seen so far */
+    private static final class Rules {
+        static final EntityRule[] NO_RULES = new EntityRule[0];
+        static final Rules EMPTY = new Rules(NO_RULES);
+
+        final EntityRule[] all; // config order, never changed
+        // empty for almost every class (cows, zombies...)
+        private final ConcurrentHashMap<Class<?>, EntityRule[]> byClass = new ConcurrentHashMap<>();
+
+        Rules(EntityRule[] all) {
+            this.all = all;
+        }
+
+        // resolved once per class, isAssignableFrom() only runs when a class is first seen
+        EntityRule[] forClass(Class<?> cls) {
+            EntityRule[] rules = byClass.get(cls);
+            if (rules == null) {
+                List<EntityRule> matching = new ArrayList<>();
+                for (EntityRule r : all) {
+                    if (r.cls.isAssignableFrom(cls)) {
+                        matching.add(r);
+                    }
+                }
+                rules = matching.isEmpty() ? NO_RULES : matching.toArray(new EntityRule[0]);
+                byClass.put(cls, rules);
+            }
+            return rules;
+        }
+    }
+
     private static class EntityRule {
+        // special resolved once instead of comparing strings for every entity
+        static final int SPECIAL_NONE = 0;
+        static final int SPECIAL_CREEPER_CHARGED = 1;
+        static final int SPECIAL_UNKNOWN = 2; // never matches
+
         final Class<? extends Entity> cls;
         final boolean burningOnly;
         final int light;
         final String special;
+        final int specialKind;
 
         EntityRule(Class<? extends Entity> cls, boolean burningOnly, int light, String special) {
             this.cls = cls; this.burningOnly = burningOnly; this.light = light; this.special = special;
+            this.specialKind = special == null ? SPECIAL_NONE
+                    : "creeper_charged".equals(special) ? SPECIAL_CREEPER_CHARGED : SPECIAL_UNKNOWN;
         }
 
-        boolean matches(Entity e) {
-            if (!cls.isInstance(e)) return false;
-            if (burningOnly && !e.isBurning()) return false;
-
-            if (e instanceof EntityCreeper) {
-                EntityCreeper creeper = (EntityCreeper) e;
-
-                // special
-                if ("creeper_charged".equals(special)) {
-                    return creeper.getPowered() || creeper.getCreeperState() == 1;
-                }
+        // the class check was already done by rulesFor(), `state` is from stateOf()
+        boolean matches(int state) {
+            if (burningOnly && (state & STATE_BURNING) == 0) return false;
+
+            switch (specialKind) {
+                case SPECIAL_NONE:
+                    return true;
+                case SPECIAL_CREEPER_CHARGED: // special, only ever set for creepers
+                    return (state & STATE_CHARGED) != 0;
+                default:
+                    return false;
             }
-            return special == null;
         }
 
     }
@@ -0,0 +1,135 @@
+package com.awesomehippo.clientdynamiclight.config;
+
+import com.google.gson.*;
+import cpw.mods.fml.common.Loader;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+// settings that aren't about items or entities (how the light gets applied etc.)
+public enum GeneralConfigLoader {
+    INSTANCE;
+
+    private static final String FILE_NAME = "config_general.json";
+
+    /*
+     * overlay mode: dynamic light is never written to the world, it's added at brightness lookup instead.
+     * Way cheaper for sources moving every tick, but light isn't occluded (can bleed through thin walls)
+     */
+    private boolean overlayMode = false;
+
+    // light work on screen goes first, off screen sources/updates are rate limited until they come into view
+    private boolean viewAwareUpdates = true;
+
+    // fast moving sources get their light a couple of ticks ahead, so it doesn't trail behind them
+    private boolean movementLookAhead = true;
+
+    // aggregated timings/counters written to metrics.csv once a second, for looking at a session afterwards
+    private boolean metricsFile = false;
+
+    /* ---------------- read/write handling for config ---------------- */
+
+    public void loadConfig() {
+        File cfg = new File(getConfigDir(), FILE_NAME);
+        if (!cfg.exists()) createDefault(cfg);
+
+        try (Reader r = new InputStreamReader(Files.newInputStream(cfg.toPath()), StandardCharsets.UTF_8)) {
+            JsonObject rootObj = new Gson().fromJson(r, JsonObject.class);
+
+            overlayMode = rootObj.has("overlayMode") && rootObj.get("overlayMode").getAsBoolean();
+            viewAwareUpdates = !rootObj.has("viewAwareUpdates") || rootObj.get("viewAwareUpdates").getAsBoolean();
+            movementLookAhead = !rootObj.has("movementLookAhead") || rootObj.get("movementLookAhead").getAsBoolean();
+            metricsFile = rootObj.has("metricsFile") && rootObj.get("metricsFile").getAsBoolean();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void saveConfig() {
+        File cfg = new File(getConfigDir(), FILE_NAME);
+        try {
+            cfg.getParentFile().mkdirs();
+
+            JsonObject root = new JsonObject();
+            if (cfg.exists()) {
+                try (Reader r = new InputStreamReader(Files.newInputStream(cfg.toPath()), StandardCharsets.UTF_8)) {
+                    JsonElement existing = new Gson().fromJson(r, JsonElement.class);
+                    if (existing != null && existing.isJsonObject()) {
+                        root = existing.getAsJsonObject();
+                    }
+                } catch (Exception e) {
+                    System.err.println("Could not load existing general config for saving, creating new one");
+                }
+            }
+
+            root.addProperty("overlayMode", overlayMode);
+            root.addProperty("viewAwareUpdates", viewAwareUpdates);
+            root.addProperty("movementLookAhead", movementLookAhead);
+            root.addProperty("metricsFile", metricsFile);
+
+            try (Writer w = new OutputStreamWriter(Files.newOutputStream(cfg.toPath()), StandardCharsets.UTF_8)) {
+                new GsonBuilder().setPrettyPrinting().create().toJson(root, w);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void createDefault(File f) {
+        try {
+            f.getParentFile().mkdirs();
+
+            JsonObject root = new JsonObject();
+            root.addProperty("overlayMode", false);
+            root.addProperty("viewAwareUpdates", true);
+            root.addProperty("movementLookAhead", true);
+            root.addProperty("metricsFile", false);
+
+            try (Writer w = new OutputStreamWriter(Files.newOutputStream(f.toPath()), StandardCharsets.UTF_8)) {
+                new GsonBuilder().setPrettyPrinting().create().toJson(root, w);
+            }
+            System.out.println("[ClientDynamicLight] Added default general config to " + f.getAbsolutePath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private File getConfigDir() {
+        return new File(Loader.instance().getConfigDir(), "clientdynamiclight");
+    }
+
+    /* -------------- getters/setters -------------- */
+
+    public boolean isOverlayMode() {
+        return overlayMode;
+    }
+
+    public void setOverlayMode(boolean overlayMode) {
+        this.overlayMode = overlayMode;
+    }
+
+    public boolean isViewAwareUpdates() {
+        return viewAwareUpdates;
+    }
+
+    public void setViewAwareUpdates(boolean viewAwareUpdates) {
+        this.viewAwareUpdates = viewAwareUpdates;
+    }
+
+    public boolean isMovementLookAhead() {
+        return movementLookAhead;
+    }
+
+    public void setMovementLookAhead(boolean movementLookAhead) {
+        this.movementLookAhead = movementLookAhead;
+    }
+
+    public boolean isMetricsFile() {
+        return metricsFile;
+    }
+
+    public void setMetricsFile(boolean metricsFile) {
+        this.metricsFile = metricsFile;
+    }
+}
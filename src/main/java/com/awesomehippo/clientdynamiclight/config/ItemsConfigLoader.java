@@ -1,5 +1,6 @@
 package com.awesomehippo.clientdynamiclight.config;
 
+import com.awesomehippo.clientdynamiclight.util.LongByteHashMap;
 import com.google.gson.*;
 import com.google.gson.reflect.TypeToken;
 import cpw.mods.fml.common.Loader;
@@ -19,15 +20,28 @@ public enum ItemsConfigLoader {
 
     private static final String FILE_NAME = "config_items.json";
     private final List<ItemRule> itemRules = new ArrayList<>();
+    private volatile LightTable lightTable = LightTable.EMPTY; // itemRules compiled, swapped as a whole on reload
+
+    // getLightLevel also runs on the scan worker, these are only written from the client thread
+    private volatile boolean disableInNether = false;
+    private volatile boolean disableInEnd = false;
+    private volatile boolean disableItems = false;
+    private volatile boolean disableDroppedItems = false;
+    private volatile boolean disableWieldedItems = false;
+    private volatile int revision = 0; // bumped whenever something getLightLevel depends on changes
+
+    public int getLightLevel(ItemStack stack, World world, boolean isDropped, boolean isWielded) {
+        if (stack == null) {
+            return 0;
+        }
+        Item item = stack.getItem();
+        return getLightLevel(item != null ? Item.getIdFromItem(item) : -1, stack.getItemDamage(),
+                world != null ? world.provider.dimensionId : 0, isDropped, isWielded);
+    }
 
-    private boolean disableInNether = false;
-    private boolean disableInEnd = false;
-    private boolean disableItems = false;
-    private boolean disableDroppedItems = false;
-    private boolean disableWieldedItems = false;
-
-    public Integer getLightLevel(ItemStack stack, World world, boolean isDropped, boolean isWielded) {
-        if (disableItems || stack == null) {
+    /* same from an item id (-1 = no item) and damage, safe off the client thread (entity snapshots) */
+    public int getLightLevel(int itemId, int damage, int dimension, boolean isDropped, boolean isWielded) {
+        if (disableItems || itemId < 0) {
             return 0;
         }
         if ((isDropped && disableDroppedItems) || (isWielded && disableWieldedItems)) {
@@ -35,28 +49,23 @@ public enum ItemsConfigLoader {
         }
 
         // check nether/end
-        if (world != null) {
-            int dimension = world.provider.dimensionId;
-            if ((dimension == -1 && disableInNether) || (dimension == 1 && disableInEnd)) {
-                return 0;
-            }
-        }
-
-        // items rules
-        for (ItemRule rule : itemRules) {
-            if (rule.matches(stack)) {
-                return rule.light;
-            }
+        if ((dimension == -1 && disableInNether) || (dimension == 1 && disableInEnd)) {
+            return 0;
         }
 
-        return 0;
+        // items rules, a table lookup instead of going through every rule
+        return lightTable.get(itemId, damage);
     }
 
     /* ---------------- read/write handling for config ---------------- */
     //TODO: add more logs?
 
     public void loadConfig() {
-        File cfg = new File(getConfigDir(), FILE_NAME);
+        loadConfig(new File(getConfigDir(), FILE_NAME));
+    }
+
+    // any file, the default config gets written there if it doesn't exist (benchmarks use this)
+    public void loadConfig(File cfg) {
         if (!cfg.exists()) createDefault(cfg);
 
         try (Reader r = new InputStreamReader(Files.newInputStream(cfg.toPath()), StandardCharsets.UTF_8)) {
@@ -83,9 +92,15 @@ public enum ItemsConfigLoader {
                 int lvl = Math.max(0, Math.min(15, je.light));
                 itemRules.add(new ItemRule(item, meta, lvl));
             }
+            lightTable = LightTable.compile(itemRules);
         } catch (Exception e) {
             e.printStackTrace();
         }
+        revision++;
+    }
+
+    public int getRevision() {
+        return revision;
     }
 
     public void saveConfig() {
@@ -165,6 +180,7 @@ public enum ItemsConfigLoader {
 
     public void setDisableInNether(boolean disableInNether) {
         this.disableInNether = disableInNether;
+        revision++;
     }
 
     public boolean isDisableInEnd() {
@@ -173,6 +189,7 @@ public enum ItemsConfigLoader {
 
     public void setDisableInEnd(boolean disableInEnd) {
         this.disableInEnd = disableInEnd;
+        revision++;
     }
 
     public boolean isDisableItems() {
@@ -181,6 +198,7 @@ public enum ItemsConfigLoader {
 
     public void setDisableItems(boolean disableItems) {
         this.disableItems = disableItems;
+        revision++;
     }
 
     public boolean isDisableDroppedItems() {
@@ -189,6 +207,7 @@ public enum ItemsConfigLoader {
 
     public void setDisableDroppedItems(boolean disableDroppedItems) {
         this.disableDroppedItems = disableDroppedItems;
+        revision++;
     }
 
     public boolean isDisableWieldedItems() {
@@ -197,6 +216,7 @@ public enum ItemsConfigLoader {
 
     public void setDisableWieldedItems(boolean disableWieldedItems) {
         this.disableWieldedItems = disableWieldedItems;
+        revision++;
     }
 
     /* config entries class */
@@ -212,7 +232,7 @@ public enum ItemsConfigLoader {
         }
     }
 
-    // rule shouldn't be laggy on a small amount of entries
+    // only used to build the LightTable now
     private static class ItemRule {
         final Item item;
         final int meta;
@@ -224,9 +244,62 @@ public enum ItemsConfigLoader {
             this.light = light;
         }
 
-        boolean matches(ItemStack stack) {
-            if (stack == null || stack.getItem() != item) return false;
-            return meta == -1 || stack.getItemDamage() == meta;
+    }
+
+    /*
+     * Rules compiled into a dense table indexed by item id, plus per-meta overrides for the ids that need them.
+     * Same result as going through the rules in order (first match wins): a meta rule listed after a wildcard
+     * rule of the same item could never match, so it's dropped. Immutable once built.
+     */
+    private static final class LightTable {
+        static final LightTable EMPTY = new LightTable(new byte[0], new boolean[0], new LongByteHashMap());
+
+        private final byte[] levels; // wildcard level per item id
+        private final boolean[] hasOverrides; // skips the map for most ids
+        private final LongByteHashMap overrides; // (id, meta) -> level + 1, so a level 0 override still counts
+
+        private LightTable(byte[] levels, boolean[] hasOverrides, LongByteHashMap overrides) {
+            this.levels = levels;
+            this.hasOverrides = hasOverrides;
+            this.overrides = overrides;
+        }
+
+        int get(int id, int meta) {
+            if (id < 0 || id >= levels.length) return 0;
+            if (hasOverrides[id]) {
+                int override = overrides.get(key(id, meta));
+                if (override != 0) return override - 1;
+            }
+            return levels[id];
+        }
+
+        static LightTable compile(List<ItemRule> rules) {
+            int maxId = -1;
+            for (ItemRule rule : rules) {
+                maxId = Math.max(maxId, Item.getIdFromItem(rule.item));
+            }
+            byte[] levels = new byte[maxId + 1];
+            boolean[] hasWildcard = new boolean[maxId + 1];
+            boolean[] hasOverrides = new boolean[maxId + 1];
+            LongByteHashMap overrides = new LongByteHashMap();
+
+            for (ItemRule rule : rules) {
+                int id = Item.getIdFromItem(rule.item);
+                if (id < 0 || hasWildcard[id]) continue; // an earlier wildcard already wins for every meta
+
+                if (rule.meta == -1) {
+                    hasWildcard[id] = true;
+                    levels[id] = (byte) rule.light;
+                } else if (!overrides.containsKey(key(id, rule.meta))) { // first rule for this meta wins
+                    overrides.put(key(id, rule.meta), rule.light + 1);
+                    hasOverrides[id] = true;
+                }
+            }
+            return new LightTable(levels, hasOverrides, overrides);
+        }
+
+        private static long key(int id, int meta) {
+            return ((long) id << 32) | (meta & 0xFFFFFFFFL);
         }
     }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.awesomehippo.clientdynamiclight.gui;
 
 import com.awesomehippo.clientdynamiclight.ClientDynamicLightHandler;
 import com.awesomehippo.clientdynamiclight.config.EntityConfigLoader;
+import com.awesomehippo.clientdynamiclight.config.GeneralConfigLoader;
 import com.awesomehippo.clientdynamiclight.config.ItemsConfigLoader;
 import cpw.mods.fml.client.config.GuiButtonExt;
 import cpw.mods.fml.client.config.GuiSlider;
@@ -26,6 +27,7 @@ public class ClientDynamicLightConfigGui extends GuiScreen {
     private GuiButtonExt disableItemsButton;
     private GuiButtonExt disableDroppedItemsButton;
     private GuiButtonExt disableWieldedItemsButton;
+    private GuiButtonExt overlayModeButton;
     private GuiButtonExt reloadButton;
 
     private boolean disableInNether = false;
@@ -34,6 +36,7 @@ public class ClientDynamicLightConfigGui extends GuiScreen {
     private boolean disableItems = false;
     private boolean disableDroppedItems = false;
     private boolean disableWieldedItems = false;
+    private boolean overlayMode = false;
     private int burningDefault = 15;
 
     public ClientDynamicLightConfigGui(GuiScreen parentScreen) {
@@ -96,6 +99,11 @@ public class ClientDynamicLightConfigGui extends GuiScreen {
                 107, rightX, y, pairBtnWidth(), btnHeight(),
                 getToggleText(StatCollector.translateToLocal("clientdynamiclight.wielded_item_lights"), !disableWieldedItems)));
 
+        y += componentSpacing();
+        buttonList.add(overlayModeButton = new GuiButtonExt(
+                108, centerX - btnWidth() / 2, y, btnWidth(), btnHeight(),
+                getToggleText(StatCollector.translateToLocal("clientdynamiclight.overlay_mode"), overlayMode)));
+
         y += componentSpacing();
         buttonList.add(reloadButton = new GuiButtonExt(
                 105, centerX - btnWidth() / 2, y, btnWidth(), btnHeight(),
@@ -145,9 +153,14 @@ public class ClientDynamicLightConfigGui extends GuiScreen {
                 disableWieldedItems = !disableWieldedItems;
                 disableWieldedItemsButton.displayString = getToggleText(StatCollector.translateToLocal("clientdynamiclight.wielded_item_lights"), !disableWieldedItems);
                 break;
+            case 108:
+                overlayMode = !overlayMode;
+                overlayModeButton.displayString = getToggleText(StatCollector.translateToLocal("clientdynamiclight.overlay_mode"), overlayMode);
+                break;
             case 105: // reload
                 EntityConfigLoader.INSTANCE.loadConfig();
                 ItemsConfigLoader.INSTANCE.loadConfig();
+                GeneralConfigLoader.INSTANCE.loadConfig();
                 loadGlobalSettings();
                 burningDefaultSlider.setValue(burningDefault);
                 updateSliderLabel();
@@ -157,6 +170,7 @@ public class ClientDynamicLightConfigGui extends GuiScreen {
                 disableItemsButton.displayString = getToggleText(StatCollector.translateToLocal("clientdynamiclight.item_lights"), !disableItems);
                 disableDroppedItemsButton.displayString = getToggleText(StatCollector.translateToLocal("clientdynamiclight.dropped_item_lights"), !disableDroppedItems);
                 disableWieldedItemsButton.displayString = getToggleText(StatCollector.translateToLocal("clientdynamiclight.wielded_item_lights"), !disableWieldedItems);
+                overlayModeButton.displayString = getToggleText(StatCollector.translateToLocal("clientdynamiclight.overlay_mode"), overlayMode);
                 break;
             case 200: // save (button or escape)
                 EntityConfigLoader.INSTANCE.setBurningDefault((int) burningDefaultSlider.getValue());
@@ -168,8 +182,10 @@ public class ClientDynamicLightConfigGui extends GuiScreen {
                 ItemsConfigLoader.INSTANCE.setDisableItems(disableItems);
                 ItemsConfigLoader.INSTANCE.setDisableDroppedItems(disableDroppedItems);
                 ItemsConfigLoader.INSTANCE.setDisableWieldedItems(disableWieldedItems);
+                GeneralConfigLoader.INSTANCE.setOverlayMode(overlayMode);
                 EntityConfigLoader.INSTANCE.saveConfig();
                 ItemsConfigLoader.INSTANCE.saveConfig();
+                GeneralConfigLoader.INSTANCE.saveConfig();
                 mc.displayGuiScreen(parentScreen);
                 break;
             case 201: // cancel, no saving
@@ -219,6 +235,8 @@ public class ClientDynamicLightConfigGui extends GuiScreen {
             tooltip.add(StatCollector.translateToLocal("clientdynamiclight.tooltip.dropped_item_lights"));
         else if (isMouseOver(disableWieldedItemsButton, mouseX, mouseY))
             tooltip.add(StatCollector.translateToLocal("clientdynamiclight.tooltip.wielded_item_lights"));
+        else if (isMouseOver(overlayModeButton, mouseX, mouseY))
+            tooltip.add(StatCollector.translateToLocal("clientdynamiclight.tooltip.overlay_mode"));
         else if (isMouseOver(reloadButton, mouseX, mouseY))
             tooltip.add(StatCollector.translateToLocal("clientdynamiclight.tooltip.reload"));
 
@@ -254,8 +272,10 @@ public class ClientDynamicLightConfigGui extends GuiScreen {
             ItemsConfigLoader.INSTANCE.setDisableItems(disableItems);
             ItemsConfigLoader.INSTANCE.setDisableDroppedItems(disableDroppedItems);
             ItemsConfigLoader.INSTANCE.setDisableWieldedItems(disableWieldedItems);
+            GeneralConfigLoader.INSTANCE.setOverlayMode(overlayMode);
             EntityConfigLoader.INSTANCE.saveConfig();
             ItemsConfigLoader.INSTANCE.saveConfig();
+            GeneralConfigLoader.INSTANCE.saveConfig();
 
             mc.displayGuiScreen(parentScreen);
             return;
@@ -275,5 +295,6 @@ public class ClientDynamicLightConfigGui extends GuiScreen {
         disableItems = ItemsConfigLoader.INSTANCE.isDisableItems();
         disableDroppedItems = ItemsConfigLoader.INSTANCE.isDisableDroppedItems();
         disableWieldedItems = ItemsConfigLoader.INSTANCE.isDisableWieldedItems();
+        overlayMode = GeneralConfigLoader.INSTANCE.isOverlayMode();
     }
 }
\ No newline at end of file
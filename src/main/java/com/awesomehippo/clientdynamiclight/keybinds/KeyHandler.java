@@ -12,6 +12,8 @@ public class KeyHandler {
 
     public static KeyBinding openConfig = new KeyBinding("Open Config", Keyboard.KEY_L, "Client Dynamic Light");
     public static KeyBinding toggleDynamicLight = new KeyBinding("Toggle Dynamic Light", Keyboard.KEY_K, "Client Dynamic Light");
+    public static KeyBinding toggleStats = new KeyBinding("Toggle Light Stats", Keyboard.KEY_NONE, "Client Dynamic Light"); // unbound, for debugging
+    public static KeyBinding recordTrace = new KeyBinding("Record Light Trace", Keyboard.KEY_NONE, "Client Dynamic Light"); // unbound, for debugging
 
     @SubscribeEvent
     public void onKeyInput(KeyInputEvent event) {
@@ -22,5 +24,13 @@ public class KeyHandler {
         if (toggleDynamicLight.isPressed()) {
             ClientDynamicLightHandler.INSTANCE.toggle();
         }
+
+        if (toggleStats.isPressed()) {
+            ClientDynamicLightHandler.INSTANCE.toggleStatsOverlay();
+        }
+
+        if (recordTrace.isPressed()) {
+            ClientDynamicLightHandler.INSTANCE.toggleTraceRecording();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,169 @@
+package com.awesomehippo.clientdynamiclight.util;
+
+import java.util.Arrays;
+
+/*
+ * int -> Object map without boxed keys. Entries are kept densely packed (keyAt/valueAt) so iterating is a plain
+ * array walk, and an open addressing index (linear probing) points into them for lookups.
+ *
+ * Removing swaps the last entry into the hole, so to remove while iterating go BACKWARDS:
+ *   for (int i = map.size() - 1; i >= 0; i--) { ... map.removeAt(i); }
+ *
+ * Not thread safe, it's only meant for the client thread.
+ */
+public final class IntObjectHashMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    private int[] index; // slot -> dense index + 1, 0 means free
+    private int mask;
+
+    public IntObjectHashMap() {
+        keys = new int[MIN_CAPACITY];
+        values = new Object[MIN_CAPACITY];
+        index = new int[MIN_CAPACITY * 2];
+        mask = index.length - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int s = slotOf(key);
+        return s < 0 ? null : (V) values[index[s] - 1];
+    }
+
+    public boolean containsKey(int key) {
+        return slotOf(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        int s = mix(key) & mask;
+        int d;
+        while ((d = index[s]) != 0) {
+            if (keys[d - 1] == key) {
+                V old = (V) values[d - 1];
+                values[d - 1] = value;
+                return old;
+            }
+            s = (s + 1) & mask;
+        }
+
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        index[s] = size;
+
+        if (size > (mask + 1) >> 1) {
+            rebuildIndex((mask + 1) * 2);
+        }
+        return null;
+    }
+
+    public V remove(int key) {
+        int s = slotOf(key);
+        return s < 0 ? null : removeSlot(s);
+    }
+
+    /* removes the entry at a dense position, the last entry takes its place */
+    public V removeAt(int i) {
+        return removeSlot(slotOf(keys[i]));
+    }
+
+    public int keyAt(int i) {
+        return keys[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V valueAt(int i) {
+        return (V) values[i];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // slots of the index, for tests
+    int indexCapacity() {
+        return index.length;
+    }
+
+    public void clear() {
+        if (size == 0) return;
+        Arrays.fill(values, 0, size, null);
+        Arrays.fill(index, 0);
+        size = 0;
+    }
+
+    private int slotOf(int key) {
+        int s = mix(key) & mask;
+        int d;
+        while ((d = index[s]) != 0) {
+            if (keys[d - 1] == key) return s;
+            s = (s + 1) & mask;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V removeSlot(int s) {
+        int d = index[s] - 1;
+        V old = (V) values[d];
+        deleteSlot(s);
+
+        int last = size - 1;
+        if (d != last) { // move the last entry into the hole
+            int lastKey = keys[last];
+            index[slotOf(lastKey)] = d + 1;
+            keys[d] = lastKey;
+            values[d] = values[last];
+        }
+        values[last] = null;
+        size--;
+        return old;
+    }
+
+    // backward shift deletion, keeps probe chains intact without tombstones
+    private void deleteSlot(int hole) {
+        int i = (hole + 1) & mask;
+        int d;
+        while ((d = index[i]) != 0) {
+            int home = mix(keys[d - 1]) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                index[hole] = d;
+                hole = i;
+            }
+            i = (i + 1) & mask;
+        }
+        index[hole] = 0;
+    }
+
+    private void rebuildIndex(int capacity) {
+        index = new int[capacity];
+        mask = capacity - 1;
+        for (int d = 0; d < size; d++) {
+            int s = mix(keys[d]) & mask;
+            while (index[s] != 0) {
+                s = (s + 1) & mask;
+            }
+            index[s] = d + 1;
+        }
+    }
+
+    // tests use it to pick colliding keys
+    static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
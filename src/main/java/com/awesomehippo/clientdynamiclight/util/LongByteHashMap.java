@@ -0,0 +1,187 @@
+package com.awesomehippo.clientdynamiclight.util;
+
+/*
+ * Open addressing (linear probing) map from a primitive long to a small positive byte, no boxing at all.
+ * Built for the computeLightValue hook: get() is one hash + a short probe run and never allocates.
+ *
+ * Values must be in 1..127, 0 is the "absent" answer (and putting 0 removes the key).
+ *
+ * Concurrency contract:
+ *  - only ONE thread mutates the map (put/remove/clear), in our case the client thread
+ *  - any thread can call get()/containsKey() without locking, readers never block the writer
+ *  - a reader always sees a complete table (resizes build a new table and publish it through a volatile),
+ *    but it may see a value one update behind the writer. That's fine for light levels since every change
+ *    also queues a relight which reads the map again.
+ */
+public final class LongByteHashMap {
+
+    private static final byte FREE = 0;
+    private static final byte REMOVED = -1; // tombstone, so lock-free readers never miss a live key during a remove
+
+    private static final int MIN_CAPACITY = 16;
+
+    // keys + values are swapped together on resize
+    private static final class Table {
+        final long[] keys;
+        final byte[] values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new byte[capacity];
+            mask = capacity - 1;
+        }
+    }
+
+    private volatile Table table;
+    private int size; // live entries
+    private int used; // live entries + tombstones
+
+    public LongByteHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongByteHashMap(int expectedSize) {
+        table = new Table(capacityFor(expectedSize));
+    }
+
+    /* returns the value mapped to key, or 0 if absent */
+    public int get(long key) {
+        final Table t = table;
+        final long[] keys = t.keys;
+        final byte[] values = t.values;
+        final int mask = t.mask;
+
+        int i = mix(key) & mask;
+        while (true) {
+            byte v = values[i];
+            if (v == FREE) return 0;
+            if (v > 0 && keys[i] == key) return v;
+            i = (i + 1) & mask;
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != 0;
+    }
+
+    /* maps key to value (1..127), putting 0 removes the key. Returns the previous value or 0 */
+    public int put(long key, int value) {
+        if (value <= 0) {
+            return remove(key);
+        }
+        if (value > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Value out of range: " + value);
+        }
+
+        Table t = table;
+        int mask = t.mask;
+        int i = mix(key) & mask;
+        int firstRemoved = -1;
+        while (true) {
+            byte v = t.values[i];
+            if (v == FREE) break;
+            if (v == REMOVED) {
+                if (firstRemoved < 0) firstRemoved = i;
+            } else if (t.keys[i] == key) {
+                t.values[i] = (byte) value;
+                return v;
+            }
+            i = (i + 1) & mask;
+        }
+
+        // not present, reuse a tombstone if we passed one
+        int slot = firstRemoved >= 0 ? firstRemoved : i;
+        t.keys[slot] = key; // key first, the value is what makes the slot visible to readers
+        t.values[slot] = (byte) value;
+        size++;
+        if (firstRemoved < 0) {
+            used++;
+            if (used > maxUsed(t)) {
+                rehash();
+            }
+        }
+        return 0;
+    }
+
+    /* returns the removed value or 0 if the key was absent */
+    public int remove(long key) {
+        Table t = table;
+        int mask = t.mask;
+        int i = mix(key) & mask;
+        while (true) {
+            byte v = t.values[i];
+            if (v == FREE) return 0;
+            if (v > 0 && t.keys[i] == key) {
+                t.values[i] = REMOVED;
+                size--;
+                return v;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    public void clear() {
+        if (used == 0) return;
+        table = new Table(MIN_CAPACITY);
+        size = 0;
+        used = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // slots of the current table, for tests
+    int capacity() {
+        return table.values.length;
+    }
+
+    // rebuild into a fresh table (bigger if really full, same size if it's mostly tombstones) then publish it
+    private void rehash() {
+        Table old = table;
+        Table t = new Table(capacityFor(size));
+        int mask = t.mask;
+        for (int j = 0; j < old.values.length; j++) {
+            byte v = old.values[j];
+            if (v <= 0) continue;
+            long key = old.keys[j];
+            int i = mix(key) & mask;
+            while (t.values[i] != FREE) {
+                i = (i + 1) & mask;
+            }
+            t.keys[i] = key;
+            t.values[i] = v;
+        }
+        used = size;
+        table = t;
+    }
+
+    // keep at most 50% used so probe runs stay very short
+    private static int maxUsed(Table t) {
+        return (t.mask + 1) >> 1;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity >> 2 < expectedSize) { // leave room to grow before the next rehash
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // packed positions are very regular, so spread the bits before masking (tests use it to pick colliding keys)
+    static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "LongByteHashMap{size=" + size + ", capacity=" + table.values.length + "}";
+    }
+}
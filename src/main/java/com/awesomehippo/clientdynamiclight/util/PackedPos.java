@@ -0,0 +1,33 @@
+package com.awesomehippo.clientdynamiclight.util;
+
+/*
+ * Our "BlockPos" since there's none on 1.7: a block position packed into a long (26 bits x, 12 bits y, 26 bits z).
+ * Only static accessors so reading a coordinate never allocates (unlike the old int[] unpacking).
+ */
+public final class PackedPos {
+
+    private PackedPos() {
+    }
+
+    public static long pack(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (y & 0xFFF) << 26) | (long) (z & 0x3FFFFFF);
+    }
+
+    // arithmetic shift keeps the sign of x
+    public static int x(long packed) {
+        return (int) (packed >> 38);
+    }
+
+    public static int y(long packed) {
+        return (int) ((packed >> 26) & 0xFFF);
+    }
+
+    // z is sign extended by hand
+    public static int z(long packed) {
+        return (int) (packed << 38 >> 38);
+    }
+
+    public static long offset(long packed, int dx, int dy, int dz) {
+        return pack(x(packed) + dx, y(packed) + dy, z(packed) + dz);
+    }
+}
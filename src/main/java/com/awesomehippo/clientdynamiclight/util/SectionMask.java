@@ -0,0 +1,49 @@
+package com.awesomehippo.clientdynamiclight.util;
+
+import java.util.Arrays;
+
+/*
+ * Coarse filter of the 16x16x16 sections that hold at least one dynamic light position.
+ * Section coords are folded into a 16x16x16 grid (coord & 15), which is exact inside any 256 blocks window
+ * (way more than our scan range) and can only give false positives past that, never false negatives.
+ * A false positive just means the caller does the real lookup.
+ *
+ * Same concurrency contract as LongByteHashMap: add/remove/clear from one thread, mayContain() from anywhere.
+ */
+public final class SectionMask {
+
+    private static final int SIZE = 16 * 16 * 16;
+
+    private final long[] bits = new long[SIZE >> 6];
+    private final int[] counts = new int[SIZE]; // how many positions keep each bit set (writer side only)
+
+    /* single bit test, false means there is definitely no dynamic light in this block's section */
+    public boolean mayContain(int x, int y, int z) {
+        int i = index(x, y, z);
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    public void add(int x, int y, int z) {
+        int i = index(x, y, z);
+        if (counts[i]++ == 0) {
+            bits[i >>> 6] |= 1L << i;
+        }
+    }
+
+    public void remove(int x, int y, int z) {
+        int i = index(x, y, z);
+        if (counts[i] == 0) return; // shouldn't happen, but never underflow
+        if (--counts[i] == 0) {
+            bits[i >>> 6] &= ~(1L << i);
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(bits, 0L);
+        Arrays.fill(counts, 0);
+    }
+
+    private static int index(int x, int y, int z) {
+        return ((x >> 4) & 15) | (((z >> 4) & 15) << 4) | (((y >> 4) & 15) << 8);
+    }
+}
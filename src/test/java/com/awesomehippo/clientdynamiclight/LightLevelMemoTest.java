@@ -0,0 +1,88 @@
+package com.awesomehippo.clientdynamiclight;
+
+import com.awesomehippo.clientdynamiclight.config.EntityConfigLoader;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LightLevelMemoTest {
+
+    private EntitySnapshot snapshot;
+    private LightLevelMemo memo;
+
+    @Before
+    public void setUp() {
+        snapshot = new EntitySnapshot();
+        memo = new LightLevelMemo();
+        memo.begin(0);
+    }
+
+    // fills entry i by hand, what EntitySnapshot.add() would copy from an entity
+    private void entry(int i, int id, byte kind, Class<?> type, int itemId, int damage, int state) {
+        snapshot.ids[i] = id;
+        snapshot.kinds[i] = kind;
+        snapshot.types[i] = type;
+        snapshot.itemIds[i] = itemId;
+        snapshot.itemDamages[i] = damage;
+        snapshot.states[i] = state;
+    }
+
+    @Test
+    public void itemEntriesHitUntilTheStackChanges() {
+        entry(0, 7, EntitySnapshot.KIND_DROPPED, null, 50, 0, 0);
+        assertEquals(LightLevelMemo.MISS, memo.lookup(snapshot, 0));
+        memo.store(snapshot, 0, 14);
+        assertEquals(14, memo.lookup(snapshot, 0));
+
+        snapshot.states[0] = EntityConfigLoader.STATE_BURNING; // not an input for items
+        assertEquals(14, memo.lookup(snapshot, 0));
+        snapshot.itemDamages[0] = 1;
+        assertEquals(LightLevelMemo.MISS, memo.lookup(snapshot, 0));
+        snapshot.itemDamages[0] = 0;
+        snapshot.kinds[0] = EntitySnapshot.KIND_PLAYER; // same stack, now held
+        assertEquals(LightLevelMemo.MISS, memo.lookup(snapshot, 0));
+    }
+
+    @Test
+    public void entityEntriesFollowClassAndState() {
+        int alive = EntityConfigLoader.STATE_ALIVE;
+        entry(0, 3, EntitySnapshot.KIND_ENTITY, String.class, -1, 0, alive);
+        memo.store(snapshot, 0, 0);
+        assertEquals(0, memo.lookup(snapshot, 0));
+
+        snapshot.states[0] = alive | EntityConfigLoader.STATE_CHARGED;
+        assertEquals(LightLevelMemo.MISS, memo.lookup(snapshot, 0));
+        memo.store(snapshot, 0, 15);
+        assertEquals(15, memo.lookup(snapshot, 0));
+
+        snapshot.types[0] = Integer.class; // id reused by another kind of entity
+        assertEquals(LightLevelMemo.MISS, memo.lookup(snapshot, 0));
+    }
+
+    @Test
+    public void dimensionChangeForgetsEverything() {
+        entry(0, 1, EntitySnapshot.KIND_DROPPED, null, 50, 0, 0);
+        memo.store(snapshot, 0, 14);
+        memo.begin(0);
+        assertEquals(14, memo.lookup(snapshot, 0));
+        memo.begin(-1);
+        assertEquals(LightLevelMemo.MISS, memo.lookup(snapshot, 0));
+        assertEquals(0, memo.size());
+    }
+
+    @Test
+    public void unusedEntriesAreEvicted() {
+        entry(0, 1, EntitySnapshot.KIND_DROPPED, null, 50, 0, 0);
+        entry(1, 2, EntitySnapshot.KIND_DROPPED, null, 89, 0, 0);
+        memo.store(snapshot, 0, 14);
+        memo.store(snapshot, 1, 15);
+
+        for (int scan = 0; scan < 200; scan++) {
+            memo.begin(0);
+            assertEquals(15, memo.lookup(snapshot, 1)); // still seen every scan
+        }
+        assertEquals(1, memo.size());
+        assertEquals(LightLevelMemo.MISS, memo.lookup(snapshot, 0));
+    }
+}
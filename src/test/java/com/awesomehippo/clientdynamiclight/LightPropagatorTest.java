@@ -0,0 +1,253 @@
+package com.awesomehippo.clientdynamiclight;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LightPropagatorTest {
+
+    private static final int SIZE = 64; // one propagator region
+    private static final int MIN = 18, MAX = 46; // where changes happen, loaded for the 17 blocks check
+
+    @Test
+    public void lightsAndClearsASingleEmitter() {
+        Box box = new Box();
+        LightPropagator propagator = new LightPropagator();
+
+        box.emitted[box.index(32, 64, 32)] = 15;
+        relight(propagator, box, 32, 64, 32);
+        assertEquals(15, box.getSavedLight(32, 64, 32));
+        assertEquals(10, box.getSavedLight(35, 66, 32));
+        assertEquals(1, box.getSavedLight(32, 64, 46));
+        assertEquals(0, box.getSavedLight(32, 64, 47));
+
+        box.emitted[box.index(32, 64, 32)] = 0;
+        relight(propagator, box, 32, 64, 32);
+        for (byte b : box.light) {
+            assertEquals(0, b);
+        }
+        assertEquals(0, box.noopWrites);
+    }
+
+    // random emitters, walls and moves, one batch per step, always the light a flood from scratch gives
+    @Test
+    public void matchesAFullRecompute() {
+        Random random = new Random(9);
+        Box box = new Box();
+        box.scatter(random);
+        LightPropagator propagator = new LightPropagator();
+        List<long[]> emitters = new ArrayList<>();
+
+        for (int step = 0; step < 300; step++) {
+            List<int[]> seeds = randomChange(random, box, emitters);
+            propagator.begin(box, seeds.get(0)[0], seeds.get(0)[2]);
+            for (int[] s : seeds) {
+                propagator.addSeed(s[0], s[1], s[2]);
+            }
+            byte[] before = box.light.clone();
+            int changed = propagator.propagate();
+
+            assertArrayEquals("step " + step, floodFill(box), box.light);
+            assertEquals("step " + step, box.writes, changed);
+            assertTrue("step " + step, changed >= differences(before, box.light));
+            box.writes = 0;
+        }
+        assertEquals(0, box.noopWrites); // blocks already at the right value are never written again
+    }
+
+    // same changes, one vanilla updateLightByType per seed on a copy
+    @Test
+    public void sameLightAsVanilla() {
+        Random random = new Random(21);
+        Box ours = new Box();
+        ours.scatter(random);
+        Box vanilla = ours.copy();
+        LightPropagator propagator = new LightPropagator();
+        VanillaBlockLight reference = new VanillaBlockLight();
+        List<long[]> emitters = new ArrayList<>();
+
+        for (int step = 0; step < 300; step++) {
+            List<int[]> seeds = randomChange(random, ours, emitters);
+            System.arraycopy(ours.opacity, 0, vanilla.opacity, 0, ours.opacity.length);
+            System.arraycopy(ours.emitted, 0, vanilla.emitted, 0, ours.emitted.length);
+
+            propagator.begin(ours, seeds.get(0)[0], seeds.get(0)[2]);
+            for (int[] s : seeds) {
+                propagator.addSeed(s[0], s[1], s[2]);
+            }
+            propagator.propagate();
+            for (int[] s : seeds) {
+                assertTrue(reference.update(vanilla, s[0], s[1], s[2]));
+            }
+
+            assertArrayEquals("step " + step, vanilla.light, ours.light);
+        }
+    }
+
+    private static void relight(LightPropagator propagator, Box box, int x, int y, int z) {
+        propagator.begin(box, x, z);
+        propagator.addSeed(x, y, z);
+        propagator.propagate();
+    }
+
+    // adds, removes or moves an emitter, or puts/removes a wall next to one, returns the positions to relight
+    private static List<int[]> randomChange(Random random, Box box, List<long[]> emitters) {
+        List<int[]> seeds = new ArrayList<>();
+        int roll = random.nextInt(10);
+        if (emitters.isEmpty() || roll < 3) {
+            int x = MIN + random.nextInt(MAX - MIN), y = 56 + random.nextInt(16), z = MIN + random.nextInt(MAX - MIN);
+            box.emitted[box.index(x, y, z)] = (byte) (1 + random.nextInt(15));
+            emitters.add(new long[]{x, y, z});
+            seeds.add(new int[]{x, y, z});
+        } else if (roll < 5) {
+            long[] e = emitters.remove(random.nextInt(emitters.size()));
+            box.emitted[box.index((int) e[0], (int) e[1], (int) e[2])] = 0;
+            seeds.add(new int[]{(int) e[0], (int) e[1], (int) e[2]});
+        } else if (roll < 8) {
+            // one block step, old and new spheres overlap (the usual case in game)
+            long[] e = emitters.get(random.nextInt(emitters.size()));
+            int x = (int) e[0], y = (int) e[1], z = (int) e[2];
+            int nx = clamp(x + random.nextInt(3) - 1), nz = clamp(z + random.nextInt(3) - 1);
+            int level = box.emitted[box.index(x, y, z)];
+            box.emitted[box.index(x, y, z)] = 0;
+            box.emitted[box.index(nx, y, nz)] = (byte) level;
+            e[0] = nx;
+            e[2] = nz;
+            seeds.add(new int[]{x, y, z});
+            seeds.add(new int[]{nx, y, nz});
+        } else {
+            long[] e = emitters.get(random.nextInt(emitters.size()));
+            int x = clamp((int) e[0] + random.nextInt(5) - 2), y = (int) e[1], z = clamp((int) e[2] + random.nextInt(5) - 2);
+            int i = box.index(x, y, z);
+            box.opacity[i] = (byte) (box.opacity[i] == 0 ? 255 : 0);
+            seeds.add(new int[]{x, y, z});
+        }
+        return seeds;
+    }
+
+    private static int clamp(int c) {
+        return Math.max(MIN, Math.min(MAX - 1, c));
+    }
+
+    private static int differences(byte[] a, byte[] b) {
+        int count = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) count++;
+        }
+        return count;
+    }
+
+    // least light that satisfies vanilla's computeLightValue everywhere, grown from the emitters
+    private static byte[] floodFill(Box box) {
+        Box flood = new Box();
+        flood.opacity = box.opacity;
+        flood.emitted = box.emitted;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int i = 0; i < box.emitted.length; i++) {
+            if (box.emitted[i] > 0) queue.add(i);
+        }
+        while (!queue.isEmpty()) {
+            int i = queue.poll();
+            int x = i % SIZE, z = i / SIZE % SIZE, y = i / (SIZE * SIZE);
+            int light = flood.expected(x, y, z);
+            if (light <= flood.light[i]) continue;
+            flood.light[i] = (byte) light;
+            for (int f = 0; f < 6; f++) {
+                int nx = x + (f == 0 ? -1 : f == 1 ? 1 : 0), ny = y + (f == 2 ? -1 : f == 3 ? 1 : 0);
+                int nz = z + (f == 4 ? -1 : f == 5 ? 1 : 0);
+                if (flood.inside(nx, ny, nz) && flood.getSavedLight(nx, ny, nz) < light) {
+                    queue.add(flood.index(nx, ny, nz));
+                }
+            }
+        }
+        return flood.light;
+    }
+
+    /* SIZE x 256 x SIZE blocks from 0,0,0, dark and opaque outside */
+    private static final class Box implements BlockLightAccess {
+
+        byte[] light = new byte[SIZE * SIZE * 256];
+        byte[] opacity = new byte[light.length];
+        byte[] emitted = new byte[light.length];
+        int writes;
+        int noopWrites;
+
+        void scatter(Random random) {
+            for (int i = 0; i < opacity.length; i++) {
+                double roll = random.nextDouble();
+                opacity[i] = (byte) (roll < 0.12 ? 255 : roll < 0.17 ? 3 : 0); // walls and some water
+            }
+        }
+
+        Box copy() {
+            Box copy = new Box();
+            copy.light = light.clone();
+            copy.opacity = opacity.clone();
+            copy.emitted = emitted.clone();
+            return copy;
+        }
+
+        int index(int x, int y, int z) {
+            return (y * SIZE + z) * SIZE + x;
+        }
+
+        boolean inside(int x, int y, int z) {
+            return x >= 0 && z >= 0 && x < SIZE && z < SIZE && y >= 0 && y < 256;
+        }
+
+        // computeLightValue written out again, what the light of x/y/z should be given its neighbours
+        int expected(int x, int y, int z) {
+            int own = getEmittedLight(x, y, z);
+            int opacity = getOpacity(x, y, z);
+            if (opacity >= 15) {
+                if (own == 0) return 0;
+                opacity = 1;
+            }
+            opacity = Math.max(1, opacity);
+            int best = own;
+            best = Math.max(best, getSavedLight(x - 1, y, z) - opacity);
+            best = Math.max(best, getSavedLight(x + 1, y, z) - opacity);
+            best = Math.max(best, getSavedLight(x, y - 1, z) - opacity);
+            best = Math.max(best, getSavedLight(x, y + 1, z) - opacity);
+            best = Math.max(best, getSavedLight(x, y, z - 1) - opacity);
+            best = Math.max(best, getSavedLight(x, y, z + 1) - opacity);
+            return own >= 14 ? own : best;
+        }
+
+        @Override
+        public int getSavedLight(int x, int y, int z) {
+            y = Math.max(0, Math.min(255, y));
+            return inside(x, y, z) ? light[index(x, y, z)] : 0;
+        }
+
+        @Override
+        public void setLight(int x, int y, int z, int level) {
+            if (!inside(x, y, z)) return;
+            writes++;
+            if (light[index(x, y, z)] == level) noopWrites++;
+            light[index(x, y, z)] = (byte) level;
+        }
+
+        @Override
+        public int getOpacity(int x, int y, int z) {
+            return inside(x, y, z) ? opacity[index(x, y, z)] & 255 : 255;
+        }
+
+        @Override
+        public int getEmittedLight(int x, int y, int z) {
+            return inside(x, y, z) ? emitted[index(x, y, z)] : 0;
+        }
+
+        @Override
+        public boolean isAreaLoaded(int x, int y, int z, int radius) {
+            return x - radius >= 0 && z - radius >= 0 && x + radius < SIZE && z + radius < SIZE;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.awesomehippo.clientdynamiclight;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LightSourceIndexTest {
+
+    private static DynamicLightSource source(int id, int x, int y, int z, int level, int targetLevel) {
+        DynamicLightSource s = new DynamicLightSource(id, x, y, z, level);
+        s.targetLevel = targetLevel;
+        return s;
+    }
+
+    @Test
+    public void maxLevelAtOnlyLooksAtThatBlock() {
+        LightSourceIndex index = new LightSourceIndex();
+        index.add(source(1, 5, 64, 5, 10, 10));
+        index.add(source(2, 5, 64, 5, 14, 14));
+        index.add(source(3, 6, 64, 5, 15, 15)); // same section, next block
+
+        assertEquals(14, index.maxLevelAt(5, 64, 5));
+        assertEquals(15, index.maxLevelAt(6, 64, 5));
+        assertEquals(0, index.maxLevelAt(7, 64, 5));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void removeTakesTheSourceOutOfItsSection() {
+        LightSourceIndex index = new LightSourceIndex();
+        DynamicLightSource a = source(1, -1, 10, -1, 8, 8);
+        DynamicLightSource b = source(2, -1, 10, -1, 4, 4);
+        index.add(a);
+        index.add(b);
+
+        assertTrue(index.remove(a));
+        assertFalse(index.remove(a));
+        assertEquals(4, index.maxLevelAt(-1, 10, -1));
+        assertTrue(index.remove(b));
+        assertEquals(0, index.sectionCount()); // empty sections are dropped
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void fadingLookupCrossesSectionEdges() {
+        LightSourceIndex index = new LightSourceIndex();
+        index.add(source(1, -1, 64, 0, 9, 0)); // fading, in the section west of x=0
+        index.add(source(2, 1, 64, 0, 12, 12)); // lit, not fading
+        index.add(source(3, 0, 66, 0, 13, 0)); // fading but 2 blocks up
+
+        assertEquals(9, index.maxFadingLevelAround(0, 64, 0, 1));
+        assertEquals(13, index.maxFadingLevelAround(0, 64, 0, 2));
+        assertEquals(0, index.maxFadingLevelAround(3, 64, 0, 1));
+    }
+
+    @Test
+    public void falloffMatchesEverySourceChecked() {
+        Random random = new Random(3);
+        LightSourceIndex index = new LightSourceIndex();
+        List<DynamicLightSource> all = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            DynamicLightSource s = source(i, random.nextInt(80) - 40, 60 + random.nextInt(10), random.nextInt(80) - 40,
+                    1 + random.nextInt(15), 15);
+            index.add(s);
+            all.add(s);
+        }
+
+        for (int q = 0; q < 500; q++) {
+            int x = random.nextInt(90) - 45, y = 55 + random.nextInt(20), z = random.nextInt(90) - 45;
+            int expected = 0;
+            for (DynamicLightSource s : all) {
+                expected = Math.max(expected, s.level - Math.abs(s.x - x) - Math.abs(s.y - y) - Math.abs(s.z - z));
+            }
+            assertEquals(expected, index.maxFalloffLevelAt(x, y, z, 15));
+        }
+    }
+
+    // the whole section version the overlay caches, block for block
+    @Test
+    public void falloffLevelsMatchTheBlockLookup() {
+        Random random = new Random(5);
+        LightSourceIndex index = new LightSourceIndex();
+        for (int i = 0; i < 60; i++) {
+            index.add(source(i, random.nextInt(64) - 32, 56 + random.nextInt(16), random.nextInt(64) - 32,
+                    1 + random.nextInt(15), 15));
+        }
+
+        byte[] levels = new byte[2048];
+        for (int sx = -3; sx <= 2; sx++) {
+            for (int sz = -3; sz <= 2; sz++) {
+                for (int sy = 2; sy <= 5; sy++) {
+                    boolean lit = index.falloffLevels(sx, sy, sz, levels);
+                    boolean anyLit = false;
+                    for (int b = 0; b < 4096; b++) {
+                        int x = sx << 4 | (b & 15), z = sz << 4 | (b >> 4 & 15), y = sy << 4 | b >> 8;
+                        int expected = index.maxFalloffLevelAt(x, y, z, 14);
+                        assertEquals(expected, levels[b >> 1] >> ((b & 1) << 2) & 15);
+                        anyLit |= expected > 0;
+                    }
+                    assertEquals(anyLit, lit);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void purgeRegionDropsExactlyTheBox() {
+        LightSourceIndex index = new LightSourceIndex();
+        List<DynamicLightSource> inside = new ArrayList<>();
+        int id = 0;
+        for (int x = -20; x <= 20; x += 4) {
+            for (int z = -20; z <= 20; z += 4) {
+                DynamicLightSource s = source(id++, x, 64, z, 5, 5);
+                index.add(s);
+                if (x >= -16 && x <= -1 && z >= 0 && z <= 15) inside.add(s); // chunk -1, 0
+            }
+        }
+        int before = index.size();
+
+        List<DynamicLightSource> removed = new ArrayList<>();
+        int count = index.purgeRegion(-16, Integer.MIN_VALUE, 0, -1, Integer.MAX_VALUE, 15, removed);
+
+        assertEquals(inside.size(), count);
+        assertEquals(inside.size(), removed.size());
+        assertTrue(removed.containsAll(inside));
+        assertEquals(before - count, index.size());
+        for (DynamicLightSource s : inside) {
+            assertEquals(0, index.maxLevelAt(s.x, s.y, s.z));
+        }
+        assertEquals(5, index.maxLevelAt(0, 64, 0)); // just outside
+    }
+
+    // a chunk column goes through the section lookups, a big box through the whole index, same result
+    @Test
+    public void purgeRegionFindsSourcesAtAnyHeight() {
+        for (boolean bigBox : new boolean[]{false, true}) {
+            LightSourceIndex index = new LightSourceIndex();
+            DynamicLightSource low = source(1, 3, -40, 3, 5, 5); // fell out of the world
+            DynamicLightSource high = source(2, 3, 300, 3, 5, 5);
+            DynamicLightSource mid = source(3, 3, 64, 3, 5, 5);
+            DynamicLightSource outside = source(4, 16, 64, 3, 5, 5);
+            index.add(low);
+            index.add(high);
+            index.add(mid);
+            index.add(outside);
+            for (int i = 0; i < 40; i++) {
+                index.add(source(10 + i, 1000 + 16 * i, 64, 3, 5, 5)); // more sections than the column has
+            }
+
+            int max = bigBox ? 1 << 20 : 15;
+            List<DynamicLightSource> removed = new ArrayList<>();
+            assertEquals(bigBox ? 44 : 3, index.purgeRegion(bigBox ? -max : 0, Integer.MIN_VALUE, 0, max, Integer.MAX_VALUE, 15, removed));
+            assertTrue(removed.contains(low) && removed.contains(high) && removed.contains(mid));
+            assertEquals(bigBox ? 0 : 41, index.size());
+            assertEquals(bigBox ? 0 : 41, index.sectionCount());
+        }
+    }
+
+    @Test
+    public void sectionKeysRoundTrip() {
+        int[] coords = {0, 1, -1, 15, -16, 1 << 20, -(1 << 20), 1_874_999, -1_875_000};
+        for (int sx : coords) {
+            for (int sz : coords) {
+                for (int sy : new int[]{0, 1, 15, -1, -4}) {
+                    long key = LightSourceIndex.sectionKey(sx, sy, sz);
+                    assertEquals(sx, LightSourceIndex.sectionX(key));
+                    assertEquals(sy, LightSourceIndex.sectionY(key));
+                    assertEquals(sz, LightSourceIndex.sectionZ(key));
+                }
+            }
+        }
+    }
+}
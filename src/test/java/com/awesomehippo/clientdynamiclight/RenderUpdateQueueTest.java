@@ -0,0 +1,54 @@
+package com.awesomehippo.clientdynamiclight;
+
+import com.awesomehippo.clientdynamiclight.util.PackedPos;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RenderUpdateQueueTest {
+
+    // at 0,64,0 looking south (+z), 70 degrees fov
+    private static final ViewCone SOUTH = new ViewCone(0.5, 64, 0.5, 0, 0, 70, 16.0 / 9);
+
+    @Test
+    public void nearestFirstAndNoDuplicates() {
+        RenderUpdateQueue queue = new RenderUpdateQueue();
+        assertTrue(queue.add(PackedPos.pack(0, 64, 100)));
+        assertTrue(queue.add(PackedPos.pack(0, 64, 10)));
+        assertTrue(queue.add(PackedPos.pack(0, 64, 50)));
+        assertFalse(queue.add(PackedPos.pack(0, 64, 10)));
+
+        long[] out = new long[2];
+        assertEquals(2, queue.drainNearest(0, 64, 0, null, 2, 0, out));
+        assertEquals(PackedPos.pack(0, 64, 10) + PackedPos.pack(0, 64, 50), out[0] + out[1]);
+        assertEquals(1, queue.size());
+        assertEquals(1, queue.drainNearest(0, 64, 0, null, 2, 0, out));
+        assertEquals(PackedPos.pack(0, 64, 100), out[0]); // the farthest waited
+    }
+
+    @Test
+    public void offscreenIsCappedOnlyWhileSomethingVisibleWaits() {
+        assertTrue(ViewCone.isVisible(SOUTH, 0, 64, 60));
+        assertFalse(ViewCone.isVisible(SOUTH, 0, 64, -60));
+
+        RenderUpdateQueue queue = new RenderUpdateQueue();
+        queue.add(PackedPos.pack(0, 64, 60));
+        for (int x = 0; x < 10; x++) {
+            queue.add(PackedPos.pack(x, 64, -60));
+        }
+
+        long[] out = new long[16];
+        assertEquals(3, queue.drainNearest(0.5, 64, 0.5, SOUTH, 16, 2, out)); // the visible one and 2 behind
+        assertEquals(8, queue.drainNearest(0.5, 64, 0.5, SOUTH, 16, 2, out)); // nothing visible left
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void alwaysVisibleIsTheNearbyBlocksOnly() {
+        assertTrue(ViewCone.isVisible(SOUTH, 0, 64, -15));
+        assertFalse(ViewCone.isVisible(SOUTH, 0, 64, -20));
+        assertFalse(ViewCone.isVisible(SOUTH, 0, 64, -30));
+    }
+}
@@ -0,0 +1,47 @@
+package com.awesomehippo.clientdynamiclight;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SourceMotionTest {
+
+    private static boolean staysOnX(int source, double x, int grid) {
+        return SourceMotion.stays(source, 64, 0, x, 64.5, 0.5, grid);
+    }
+
+    @Test
+    public void exactBlockWithAMarginOnBothSides() {
+        assertTrue(staysOnX(5, 5.0, 1));
+        assertTrue(staysOnX(5, 4.75, 1));
+        assertTrue(staysOnX(5, 6.25, 1));
+        assertFalse(staysOnX(5, 4.65, 1));
+        assertFalse(staysOnX(5, 6.35, 1));
+    }
+
+    // the window is the cell the source was snapped into, not a box around its middle block
+    @Test
+    public void lodWindowIsTheCellPlusTheSameMargin() {
+        for (int grid : new int[]{2, 4}) {
+            for (int cell : new int[]{-3, 0, 2}) {
+                int min = cell * grid;
+                int source = LightLod.snap(min, grid == 2 ? LightLod.MID : LightLod.FAR);
+                assertEquals(min + grid / 2, source);
+
+                assertTrue(staysOnX(source, min - 0.25, grid));
+                assertTrue(staysOnX(source, min + grid + 0.25, grid));
+                assertFalse(staysOnX(source, min - 0.35, grid));
+                assertFalse(staysOnX(source, min + grid + 0.35, grid));
+            }
+        }
+    }
+
+    @Test
+    public void everyAxisHasToStay() {
+        assertTrue(SourceMotion.stays(0, 0, 0, 0.5, 0.5, 0.5, 1));
+        assertFalse(SourceMotion.stays(0, 0, 0, 0.5, 1.5, 0.5, 1));
+        assertFalse(SourceMotion.stays(0, 0, 0, 0.5, 0.5, -0.5, 1));
+    }
+}
@@ -0,0 +1,97 @@
+package com.awesomehippo.clientdynamiclight;
+
+/*
+ * Vanilla World.updateLightByType(EnumSkyBlock.Block, ...) over a BlockLightAccess, line for line (same 32768
+ * entries list, same 17 blocks limit, same 6 bits relative packing).
+ *
+ * Test code only (RelightBatcher's vanilla path calls the real World), it's the reference LightPropagator is
+ * checked against in LightPropagatorTest and measured against in PropagatorBenchmark (the jmh source set sees the
+ * test classes).
+ */
+final class VanillaBlockLight {
+
+    private static final int[] DX = {-1, 1, 0, 0, 0, 0};
+    private static final int[] DY = {0, 0, -1, 1, 0, 0};
+    private static final int[] DZ = {0, 0, 0, 0, -1, 1};
+
+    private final int[] list = new int[32768];
+
+    /* one vanilla relight of x/y/z, false if the area isn't loaded */
+    boolean update(BlockLightAccess access, int x, int y, int z) {
+        if (!access.isAreaLoaded(x, y, z, 17)) {
+            return false;
+        }
+        int head = 0;
+        int size = 0;
+        int saved = access.getSavedLight(x, y, z);
+        int computed = computeLight(access, x, y, z);
+
+        if (computed > saved) {
+            list[size++] = 133152; // 32,32,32: the block itself
+        } else if (computed < saved) {
+            list[size++] = 133152 | saved << 18;
+
+            while (head < size) {
+                int entry = list[head++];
+                int bx = (entry & 63) - 32 + x;
+                int by = (entry >> 6 & 63) - 32 + y;
+                int bz = (entry >> 12 & 63) - 32 + z;
+                int level = entry >> 18 & 15;
+
+                if (access.getSavedLight(bx, by, bz) != level) continue;
+                access.setLight(bx, by, bz, 0);
+                if (level <= 0) continue;
+                if (Math.abs(bx - x) + Math.abs(by - y) + Math.abs(bz - z) >= 17) continue;
+
+                for (int f = 0; f < 6; f++) {
+                    int nx = bx + DX[f], ny = by + DY[f], nz = bz + DZ[f];
+                    int expected = level - Math.max(1, access.getOpacity(nx, ny, nz));
+                    if (access.getSavedLight(nx, ny, nz) == expected && size < list.length) {
+                        list[size++] = nx - x + 32 | ny - y + 32 << 6 | nz - z + 32 << 12 | expected << 18;
+                    }
+                }
+            }
+            head = 0; // the increase pass goes over the darkened blocks again
+        }
+
+        while (head < size) {
+            int entry = list[head++];
+            int bx = (entry & 63) - 32 + x;
+            int by = (entry >> 6 & 63) - 32 + y;
+            int bz = (entry >> 12 & 63) - 32 + z;
+
+            int before = access.getSavedLight(bx, by, bz);
+            int light = computeLight(access, bx, by, bz);
+            if (light == before) continue;
+            access.setLight(bx, by, bz, light);
+            if (light < before) continue;
+            if (Math.abs(bx - x) + Math.abs(by - y) + Math.abs(bz - z) >= 17 || size >= list.length - 6) continue;
+
+            for (int f = 0; f < 6; f++) {
+                int nx = bx + DX[f], ny = by + DY[f], nz = bz + DZ[f];
+                if (access.getSavedLight(nx, ny, nz) < light) {
+                    list[size++] = nx - x + 32 | ny - y + 32 << 6 | nz - z + 32 << 12;
+                }
+            }
+        }
+        return true;
+    }
+
+    // World.computeLightValue for block light
+    private static int computeLight(BlockLightAccess access, int x, int y, int z) {
+        int light = access.getEmittedLight(x, y, z);
+        int opacity = access.getOpacity(x, y, z);
+
+        if (opacity >= 15 && light > 0) opacity = 1;
+        if (opacity < 1) opacity = 1;
+        if (opacity >= 15) return 0;
+        if (light >= 14) return light;
+
+        for (int f = 0; f < 6; f++) {
+            int neighbor = access.getSavedLight(x + DX[f], y + DY[f], z + DZ[f]) - opacity;
+            if (neighbor > light) light = neighbor;
+            if (light >= 14) return light;
+        }
+        return light;
+    }
+}
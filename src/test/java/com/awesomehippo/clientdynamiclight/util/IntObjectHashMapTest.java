@@ -0,0 +1,171 @@
+package com.awesomehippo.clientdynamiclight.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class IntObjectHashMapTest {
+
+    @Test
+    public void putGetRemove() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<>();
+        assertNull(map.put(1, "a"));
+        assertNull(map.put(-7, "b"));
+        assertEquals("a", map.put(1, "c")); // previous value
+        assertEquals("c", map.get(1));
+        assertEquals("b", map.get(-7));
+        assertNull(map.get(2));
+        assertEquals(2, map.size());
+
+        assertEquals("b", map.remove(-7));
+        assertNull(map.remove(-7));
+        assertFalse(map.containsKey(-7));
+        assertTrue(map.containsKey(1));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void removeAtMovesTheLastEntryIntoTheHole() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<>();
+        map.put(10, "a");
+        map.put(20, "b");
+        map.put(30, "c");
+
+        assertEquals("a", map.removeAt(0));
+        assertEquals(2, map.size());
+        assertEquals(30, map.keyAt(0));
+        assertEquals("c", map.valueAt(0));
+        assertEquals("c", map.get(30)); // the index follows the move
+        assertEquals("b", map.get(20));
+        assertNull(map.get(10));
+    }
+
+    @Test
+    public void removingBackwardsWhileIteratingVisitsEverything() {
+        IntObjectHashMap<Integer> map = new IntObjectHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            map.put(i * 31, i);
+        }
+        int visited = 0;
+        for (int i = map.size() - 1; i >= 0; i--) {
+            visited++;
+            if (map.valueAt(i) % 2 == 0) {
+                map.removeAt(i);
+            }
+        }
+        assertEquals(100, visited);
+        assertEquals(50, map.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 2 != 0, map.containsKey(i * 31));
+        }
+    }
+
+    // backward shift deletion has to move entries back across the end of the index
+    @Test
+    public void deletingInsideARunThatWrapsAround() {
+        int capacity = new IntObjectHashMap<>().indexCapacity();
+        int[] atEnd = keysHomedAt(capacity - 1, 4, capacity); // slots capacity-1, 0, 1, 2
+        int[] atZero = keysHomedAt(0, 1, capacity); // pushed behind them, slot 3
+        int[] atTwo = keysHomedAt(2, 1, capacity); // slot 4
+
+        for (int removed = 0; removed < 4; removed++) {
+            IntObjectHashMap<String> map = new IntObjectHashMap<>();
+            List<Integer> keys = new ArrayList<>();
+            for (int k : atEnd) keys.add(k);
+            keys.add(atZero[0]);
+            keys.add(atTwo[0]);
+            for (int k : keys) {
+                map.put(k, "v" + k);
+            }
+            assertEquals(capacity, map.indexCapacity()); // still no rebuild, so the layout is the one above
+
+            int gone = keys.remove(removed);
+            assertEquals("v" + gone, map.remove(gone));
+            assertNull(map.get(gone));
+            for (int k : keys) {
+                assertEquals("v" + k, map.get(k));
+            }
+
+            // and again from the new layout
+            int second = keys.remove(keys.size() - 1 - removed);
+            map.remove(second);
+            for (int k : keys) {
+                assertEquals("v" + k, map.get(k));
+            }
+            assertEquals(keys.size(), map.size());
+        }
+    }
+
+    @Test
+    public void clearEmptiesTheMap() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<>();
+        for (int i = 0; i < 40; i++) {
+            map.put(i, "x");
+        }
+        map.clear();
+        assertTrue(map.isEmpty());
+        for (int i = 0; i < 40; i++) {
+            assertNull(map.get(i));
+        }
+        map.put(3, "y");
+        assertEquals("y", map.get(3));
+        assertEquals(1, map.size());
+    }
+
+    // lots of churn in a small key space, the dense entries and the index have to agree all along
+    @Test
+    public void sameAnswersAsAHashMap() {
+        IntObjectHashMap<Integer> map = new IntObjectHashMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int op = 0; op < 200_000; op++) {
+            int key = random.nextInt(300) - 150;
+            int roll = random.nextInt(100);
+            if (roll < 45) {
+                Integer value = random.nextInt();
+                assertEquals(expected.put(key, value), map.put(key, value));
+            } else if (roll < 80) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else if (roll < 90 && map.size() > 0) {
+                int i = random.nextInt(map.size());
+                assertEquals(expected.remove(map.keyAt(i)), map.removeAt(i));
+            } else if (roll < 99) {
+                assertEquals(expected.get(key), map.get(key));
+            } else if (random.nextInt(50) == 0) {
+                expected.clear();
+                map.clear();
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        for (int i = 0; i < map.size(); i++) {
+            assertSame(expected.get(map.keyAt(i)), map.valueAt(i));
+        }
+        for (Map.Entry<Integer, Integer> e : expected.entrySet()) {
+            assertSame(e.getValue(), map.get(e.getKey()));
+        }
+    }
+
+    // `count` keys whose probe run starts at `slot` in an index of `capacity` slots
+    private static int[] keysHomedAt(int slot, int count, int capacity) {
+        int[] keys = new int[count];
+        int found = 0;
+        for (int key = 1; found < count; key++) {
+            if ((IntObjectHashMap.mix(key) & (capacity - 1)) == slot) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,175 @@
+package com.awesomehippo.clientdynamiclight.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongByteHashMapTest {
+
+    @Test
+    public void putGetRemove() {
+        LongByteHashMap map = new LongByteHashMap();
+        long a = PackedPos.pack(10, 64, -3);
+        long b = PackedPos.pack(-10, 0, 3);
+
+        assertEquals(0, map.put(a, 14));
+        assertEquals(0, map.put(b, 7));
+        assertEquals(14, map.get(a));
+        assertEquals(7, map.get(b));
+        assertEquals(2, map.size());
+
+        assertEquals(14, map.put(a, 3)); // previous value
+        assertEquals(3, map.get(a));
+        assertEquals(2, map.size());
+
+        assertEquals(3, map.remove(a));
+        assertEquals(0, map.get(a));
+        assertFalse(map.containsKey(a));
+        assertEquals(0, map.remove(a));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void puttingZeroRemoves() {
+        LongByteHashMap map = new LongByteHashMap();
+        map.put(42L, 5);
+        assertEquals(5, map.put(42L, 0));
+        assertFalse(map.containsKey(42L));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsValuesPastAByte() {
+        new LongByteHashMap().put(1L, 128);
+    }
+
+    @Test
+    public void keyPastATombstoneIsStillFound() {
+        LongByteHashMap map = new LongByteHashMap();
+        long[] keys = keysHomedAt(3, 3, map.capacity());
+        map.put(keys[0], 1);
+        map.put(keys[1], 2);
+        map.put(keys[2], 3);
+
+        map.remove(keys[0]); // tombstone at the head of the probe run
+        map.remove(keys[1]);
+        assertEquals(3, map.get(keys[2]));
+        assertEquals(0, map.get(keys[0]));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void tombstonesAreReused() {
+        LongByteHashMap map = new LongByteHashMap();
+        int capacity = map.capacity();
+        long[] keys = keysHomedAt(5, 2, capacity);
+        map.put(keys[0], 1);
+
+        // the same slot taken and freed over and over, no new slot used so no rehash either
+        for (int i = 0; i < 1000; i++) {
+            map.remove(keys[i & 1]);
+            map.put(keys[(i + 1) & 1], 1 + (i % 100));
+            assertEquals(1, map.size());
+        }
+        assertEquals(capacity, map.capacity());
+        assertEquals(1 + (999 % 100), map.get(keys[0]));
+    }
+
+    @Test
+    public void probeRunWrapsAroundTheEnd() {
+        LongByteHashMap map = new LongByteHashMap();
+        int capacity = map.capacity();
+        long[] keys = keysHomedAt(capacity - 1, 4, capacity); // 3 of them spill over into slots 0, 1 and 2
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], i + 1);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(i + 1, map.get(keys[i]));
+        }
+
+        map.remove(keys[0]);
+        map.remove(keys[2]);
+        assertEquals(2, map.get(keys[1]));
+        assertEquals(4, map.get(keys[3]));
+
+        map.put(keys[2], 9); // back into a tombstone on the other side of the end
+        assertEquals(9, map.get(keys[2]));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    public void growsAndKeepsEverything() {
+        LongByteHashMap map = new LongByteHashMap();
+        for (int i = 0; i < 5000; i++) {
+            map.put(PackedPos.pack(i, i & 255, -i), 1 + (i % 127));
+        }
+        assertEquals(5000, map.size());
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(1 + (i % 127), map.get(PackedPos.pack(i, i & 255, -i)));
+        }
+    }
+
+    @Test
+    public void clearForgetsEverything() {
+        LongByteHashMap map = new LongByteHashMap();
+        for (int i = 0; i < 100; i++) {
+            map.put(i, 1);
+        }
+        map.clear();
+        assertEquals(0, map.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, map.get(i));
+        }
+        map.put(7L, 7);
+        assertEquals(7, map.get(7L));
+    }
+
+    // lots of churn in a small key space: tombstones everywhere, same size rehashes and wrapped probe runs
+    @Test
+    public void sameAnswersAsAHashMap() {
+        LongByteHashMap map = new LongByteHashMap();
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int op = 0; op < 200_000; op++) {
+            long key = PackedPos.pack(random.nextInt(40) - 20, 64, random.nextInt(40) - 20);
+            int roll = random.nextInt(100);
+            if (roll < 45) {
+                int value = 1 + random.nextInt(127);
+                Integer old = expected.put(key, value);
+                assertEquals(old == null ? 0 : old, map.put(key, value));
+            } else if (roll < 90) {
+                Integer old = expected.remove(key);
+                assertEquals(old == null ? 0 : old, map.remove(key));
+            } else if (roll < 99) {
+                Integer value = expected.get(key);
+                assertEquals(value == null ? 0 : value, map.get(key));
+            } else if (random.nextInt(50) == 0) {
+                expected.clear();
+                map.clear();
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Map.Entry<Long, Integer> e : expected.entrySet()) {
+            assertEquals((int) e.getValue(), map.get(e.getKey()));
+        }
+    }
+
+    // `count` keys whose probe run starts at `slot` in a table of `capacity` slots
+    private static long[] keysHomedAt(int slot, int count, int capacity) {
+        long[] keys = new long[count];
+        int found = 0;
+        for (long key = 1; found < count; key++) {
+            if ((LongByteHashMap.mix(key) & (capacity - 1)) == slot) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+}
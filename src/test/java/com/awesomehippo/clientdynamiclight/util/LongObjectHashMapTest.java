@@ -0,0 +1,101 @@
+package com.awesomehippo.clientdynamiclight.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class LongObjectHashMapTest {
+
+    @Test
+    public void putGetRemove() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        long a = PackedPos.pack(-100, 3, 100);
+        long b = Long.MIN_VALUE;
+        assertNull(map.put(a, "a"));
+        assertNull(map.put(b, "b"));
+        assertEquals("a", map.put(a, "c"));
+        assertEquals("c", map.get(a));
+        assertEquals("b", map.get(b));
+
+        assertEquals("c", map.remove(a));
+        assertNull(map.get(a));
+        assertEquals(1, map.size());
+        assertEquals(b, map.keyAt(0));
+    }
+
+    // backward shift deletion has to move entries back across the end of the index
+    @Test
+    public void deletingInsideARunThatWrapsAround() {
+        int capacity = new LongObjectHashMap<>().indexCapacity();
+        long[] atEnd = keysHomedAt(capacity - 1, 3, capacity); // slots capacity-1, 0, 1
+        long[] atZero = keysHomedAt(0, 2, capacity); // slots 2, 3
+
+        for (int removed = 0; removed < 5; removed++) {
+            LongObjectHashMap<Long> map = new LongObjectHashMap<>();
+            long[] keys = {atEnd[0], atEnd[1], atEnd[2], atZero[0], atZero[1]};
+            for (long k : keys) {
+                map.put(k, k);
+            }
+            assertEquals(capacity, map.indexCapacity());
+
+            map.remove(keys[removed]);
+            for (int i = 0; i < keys.length; i++) {
+                if (i == removed) {
+                    assertNull(map.get(keys[i]));
+                } else {
+                    assertEquals((Long) keys[i], map.get(keys[i]));
+                }
+            }
+            assertEquals(4, map.size());
+        }
+    }
+
+    @Test
+    public void sameAnswersAsAHashMap() {
+        LongObjectHashMap<Long> map = new LongObjectHashMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(7);
+
+        for (int op = 0; op < 200_000; op++) {
+            long key = PackedPos.pack(random.nextInt(20) - 10, random.nextInt(4), random.nextInt(20) - 10);
+            int roll = random.nextInt(100);
+            if (roll < 45) {
+                Long value = random.nextLong();
+                assertEquals(expected.put(key, value), map.put(key, value));
+            } else if (roll < 80) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else if (roll < 90 && map.size() > 0) {
+                int i = random.nextInt(map.size());
+                assertEquals(expected.remove(map.keyAt(i)), map.removeAt(i));
+            } else if (roll < 99) {
+                assertEquals(expected.get(key), map.get(key));
+            } else if (random.nextInt(50) == 0) {
+                expected.clear();
+                map.clear();
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        for (int i = 0; i < map.size(); i++) {
+            assertSame(expected.get(map.keyAt(i)), map.valueAt(i));
+        }
+    }
+
+    // `count` keys whose probe run starts at `slot` in an index of `capacity` slots
+    private static long[] keysHomedAt(int slot, int count, int capacity) {
+        long[] keys = new long[count];
+        int found = 0;
+        for (long key = 1; found < count; key++) {
+            if ((LongObjectHashMap.mix(key) & (capacity - 1)) == slot) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,74 @@
+package com.awesomehippo.clientdynamiclight.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SectionMaskTest {
+
+    @Test
+    public void coversTheWholeSection() {
+        SectionMask mask = new SectionMask();
+        mask.add(20, 70, -5);
+
+        assertTrue(mask.mayContain(16, 64, -16));
+        assertTrue(mask.mayContain(31, 79, -1));
+        assertFalse(mask.mayContain(32, 70, -5));
+        assertFalse(mask.mayContain(15, 70, -5));
+        assertFalse(mask.mayContain(20, 80, -5));
+        assertFalse(mask.mayContain(20, 70, 0));
+    }
+
+    @Test
+    public void bitStaysUntilTheLastPositionLeaves() {
+        SectionMask mask = new SectionMask();
+        mask.add(1, 1, 1);
+        mask.add(2, 2, 2);
+        mask.add(2, 2, 2); // same block counted twice, like two sources sharing it
+
+        mask.remove(1, 1, 1);
+        assertTrue(mask.mayContain(0, 0, 0));
+        mask.remove(2, 2, 2);
+        assertTrue(mask.mayContain(0, 0, 0));
+        mask.remove(2, 2, 2);
+        assertFalse(mask.mayContain(0, 0, 0));
+    }
+
+    @Test
+    public void removingMoreThanWasAddedDoesNotUnderflow() {
+        SectionMask mask = new SectionMask();
+        mask.remove(5, 5, 5);
+        mask.add(5, 5, 5);
+        assertTrue(mask.mayContain(5, 5, 5));
+        mask.remove(5, 5, 5);
+        assertFalse(mask.mayContain(5, 5, 5));
+    }
+
+    @Test
+    public void sections256BlocksApartShareABit() {
+        SectionMask mask = new SectionMask();
+        mask.add(-3, 10, 7);
+
+        // a false positive past the window, never a false negative
+        assertTrue(mask.mayContain(-3 + 256, 10, 7));
+        assertTrue(mask.mayContain(-3, 10, 7 - 256));
+        assertFalse(mask.mayContain(-3 + 128, 10, 7));
+    }
+
+    @Test
+    public void clearDropsEveryBit() {
+        SectionMask mask = new SectionMask();
+        for (int x = -64; x < 64; x += 16) {
+            mask.add(x, 64, x);
+        }
+        mask.clear();
+        for (int x = -64; x < 64; x += 16) {
+            assertFalse(mask.mayContain(x, 64, x));
+        }
+
+        mask.add(0, 64, 0); // counts were reset too
+        mask.remove(0, 64, 0);
+        assertFalse(mask.mayContain(0, 64, 0));
+    }
+}